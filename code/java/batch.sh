@@ -0,0 +1,11 @@
+#! /bin/bash
+DBNAME=$1
+PORT=$2
+USER=$3
+SCRIPT=$4
+
+# Runs the commands in a script, or standard input for -, without the menu;
+# results go to standard output, failures and the timing summary to standard error;
+# exits with status 1 when any command failed
+# Example: source ./batch.sh flightDB 5432 user nightly.txt > results.txt
+java -cp lib/*:bin/ DBproject $DBNAME $PORT $USER --batch $SCRIPT
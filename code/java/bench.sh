@@ -0,0 +1,9 @@
+#! /bin/bash
+DBNAME=$1
+PORT=$2
+USER=$3
+BENCHMARK=$4
+SECONDS_PER_RUN=$5
+
+# Example: source ./bench.sh flightDB 5432 user pool 10
+java -cp lib/*:bin/ DBbenchmark $DBNAME $PORT $USER $BENCHMARK $SECONDS_PER_RUN
@@ -0,0 +1,233 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the menu options, run through the menu methods
+ * themselves with their answers typed in from a script, so that every
+ * change behind a menu option shows up in the numbers: input parsing, key
+ * allocation, the statement cache, the caches and result printing.
+ *
+ * Each trial starts by reloading every table from the CSV files in
+ * code/data with DataLoader, so runs begin from the same rows whatever the
+ * previous run wrote.  Each benchmark reports its throughput and, from
+ * sampled calls, its latency percentiles.  The menu prints to a stream
+ * that is thrown away; the menu methods report failures on System.err
+ * instead of throwing, so anything written there fails the iteration
+ * rather than timing an error path.
+ *
+ * The menu reads its answers from the static DBproject.in, so the
+ * benchmarks run on one thread.
+ *
+ * The JMH jars (jmh-core, jmh-generator-annprocess, jopt-simple and
+ * commons-math3) must be in lib/; see jmh.sh.
+ *
+ *	source ./jmh.sh flightDB 5432 user
+ *	source ./jmh.sh flightDB 5432 user bookFlight -prof gc
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(1)
+public class MenuBenchmark {
+	@Param("flightDB")
+	String dbname;
+	@Param("5432")
+	String port;
+	@Param("user")
+	String user;
+	@Param("../data")
+	String data;
+
+	private DBproject esql;
+	private PrintStream out;
+	private PrintStream err;
+	// everything the menu reported as an error during the iteration
+	private final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+	private int[] customers;
+	private int[] flights;
+	private java.sql.Date[] departures;
+	// the next customer and flight used, in turn, so every run is the same
+	private int next = 0;
+	// customer and flight pairs holding a reservation in the loaded data
+	private final Set<Long> loadedBookings = new HashSet<Long>();
+	// reservations from this number on were made by bookFlight
+	private int firstBooking;
+	// the next pair bookFlight tries, counting through customers times flights
+	private long nextBooking = 0;
+
+	@Setup(Level.Trial)
+	public void connect() throws Exception {
+		this.esql = new DBproject(this.dbname, this.port, this.user, "");
+		new DataLoader(this.esql, new File(this.data)).load(DBproject.LOADER_THREADS);
+
+		ResultTable ids = this.esql.executeQueryAndReturnTable("SELECT id FROM Customer ORDER BY id;");
+		this.customers = new int[ids.getRowCount()];
+		for (int i = 0; i < this.customers.length; ++i)
+			this.customers[i] = ids.getInt(i, 0);
+		// flights with a plane, which option 6 needs
+		ResultTable flights = this.esql.executeQueryAndReturnTable("SELECT F.fnum, F.actual_departure_date"
+			+ " FROM Flight F, FlightInfo FI WHERE FI.flight_id = F.fnum ORDER BY F.fnum;");
+		this.flights = new int[flights.getRowCount()];
+		this.departures = new java.sql.Date[flights.getRowCount()];
+		for (int i = 0; i < this.flights.length; ++i) {
+			this.flights[i] = flights.getInt(i, 0);
+			this.departures[i] = java.sql.Date.valueOf(flights.getString(i, 1).substring(0, 10));
+		}
+		if (this.customers.length == 0 || this.flights.length == 0)
+			throw new IllegalStateException("No customers or flights were loaded from " + this.data);
+		ResultTable booked = this.esql.executeQueryAndReturnTable("SELECT cid, fid FROM Reservation;");
+		for (int i = 0; i < booked.getRowCount(); ++i)
+			this.loadedBookings.add(pair(booked.getInt(i, 0), booked.getInt(i, 1)));
+		this.firstBooking = this.esql.executeQueryAndReturnTable(
+			"SELECT COALESCE(MAX(rnum), -1) + 1 FROM Reservation;").getInt(0, 0);
+
+		this.out = System.out;
+		this.err = System.err;
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+		System.setErr(new PrintStream(this.errors, true));
+		// the console writer is made on first use, after System.out is replaced
+		DBproject.CONSOLE.remove();
+	}
+
+	/*
+	 * Deletes the reservations bookFlight made, so that every iteration
+	 * books the same new pairs again instead of changing their status.
+	 * They are all waitlisted, so no flight's num_sold moves.
+	 */
+	@Setup(Level.Iteration)
+	public void resetBookings() throws Exception {
+		this.esql.executeUpdate("DELETE FROM Reservation WHERE rnum >= ?;", this.firstBooking);
+		this.nextBooking = 0;
+	}
+
+	@TearDown(Level.Iteration)
+	public void checkErrors() {
+		if (this.errors.size() > 0) {
+			String reported = this.errors.toString();
+			this.errors.reset();
+			throw new IllegalStateException("The menu reported: " + reported);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void disconnect() {
+		System.setOut(this.out);
+		System.setErr(this.err);
+		DBproject.CONSOLE.remove();
+		this.esql.cleanup();
+	}
+
+	/*
+	 * Answers the menu's next prompts with the given lines.
+	 */
+	private static void type(String... lines) {
+		StringBuilder script = new StringBuilder();
+		for (String line : lines)
+			script.append(line).append('\n');
+		DBproject.in = new BufferedReader(new StringReader(script.toString()));
+	}
+
+	private static long pair(int cid, int fid) {
+		return ((long) cid << 32) | (fid & 0xFFFFFFFFL);
+	}
+
+	private int nextIndex() {
+		int index = this.next;
+		this.next = (index + 1) % this.flights.length;
+		return index;
+	}
+
+	@Benchmark
+	public int addPlane() {
+		type("Boeing", "737-800", "5", "189");
+		return DBproject.AddPlane(this.esql);
+	}
+
+	@Benchmark
+	public int addPilot() {
+		type("Benchmark Pilot", "US");
+		return DBproject.AddPilot(this.esql);
+	}
+
+	@Benchmark
+	public int insertFlight() {
+		type("500", "0", "1", "2014-05-01", "2014-05-02", "TDOBK", "JALYJ");
+		return DBproject.InsertFlight(this.esql);
+	}
+
+	/*
+	 * Books an existing customer on a flight they hold no reservation on,
+	 * the new booking path; a pair only comes round again after every
+	 * customer has been booked on every flight (500,000 calls with the
+	 * sample data).
+	 */
+	@Benchmark
+	public void bookFlight() {
+		int cid;
+		int fid;
+		do {
+			long n = this.nextBooking++;
+			fid = this.flights[(int) (n % this.flights.length)];
+			cid = this.customers[(int) (n / this.flights.length % this.customers.length)];
+		} while (this.loadedBookings.contains(pair(cid, fid)));
+		// waitlisted, so the flights never sell out however long the run
+		type(String.valueOf(cid), String.valueOf(fid), "W");
+		DBproject.BookFlight(this.esql);
+	}
+
+	@Benchmark
+	public void listNumberOfAvailableSeats() {
+		int index = nextIndex();
+		type(String.valueOf(this.flights[index]), this.departures[index].toString());
+		DBproject.ListNumberOfAvailableSeats(this.esql);
+	}
+
+	@Benchmark
+	public void listsTotalNumberOfRepairsPerPlane() {
+		DBproject.ListsTotalNumberOfRepairsPerPlane(this.esql);
+	}
+
+	@Benchmark
+	public void listTotalNumberOfRepairsPerYear() {
+		DBproject.ListTotalNumberOfRepairsPerYear(this.esql);
+	}
+
+	@Benchmark
+	public void findPassengersCountWithStatus() {
+		type("R", String.valueOf(this.flights[nextIndex()]));
+		DBproject.FindPassengersCountWithStatus(this.esql);
+	}
+}//end MenuBenchmark
@@ -0,0 +1,10 @@
+#! /bin/bash
+DIRECTORY=$1
+FLIGHTS=$2
+RESERVATIONS=$3
+SEED=$4
+
+# Writes the nine CSV files at any scale, the same files for the same arguments;
+# load them with: java -cp lib/*:bin/ DBproject flightDB 5432 user --load $DIRECTORY
+# Example: source ./generate.sh ../data-large 1000000 10000000 42
+java -cp bin/ DataGenerator $DIRECTORY $FLIGHTS $RESERVATIONS $SEED
@@ -0,0 +1,13 @@
+#! /bin/bash
+DBNAME=$1
+PORT=$2
+USER=$3
+BENCHMARK=$4
+
+# Runs the JMH menu benchmarks, all of them or those matching BENCHMARK, after
+# reloading the tables from ../data; compile.sh must have been run first, and
+# the jmh-core, jmh-generator-annprocess, jopt-simple and commons-math3 jars
+# must be in lib/. Any further arguments are passed on to JMH.
+# Example: source ./jmh.sh flightDB 5432 user bookFlight -prof gc
+javac -cp "lib/*:bin/" bench/*.java -d bin/
+java -cp "lib/*:bin/" org.openjdk.jmh.Main "MenuBenchmark.${BENCHMARK:-}" -p dbname=$DBNAME -p port=$PORT -p user=$USER "${@:5}"
@@ -0,0 +1,8 @@
+#! /bin/bash
+DBNAME=$1
+PORT=$2
+USER=$3
+
+# Reloads every table from ../data; the tables must already exist
+# Example: source ./load.sh flightDB 5432 user
+java -cp lib/*:bin/ DBproject $DBNAME $PORT $USER --load ../data
@@ -0,0 +1,10 @@
+#! /bin/bash
+URL=$1
+FNUM=$2
+DATE=$3
+MAX_CONCURRENCY=$4
+SECONDS_PER_LEVEL=$5
+
+# Reports p50/p99 latency of a running ApiServer at doubling concurrency
+# Example: source ./loadtest.sh http://localhost:8080 120 2015-03-23 256 10
+java -cp bin/ LoadTest $URL $FNUM $DATE $MAX_CONCURRENCY $SECONDS_PER_LEVEL
@@ -0,0 +1,9 @@
+#! /bin/bash
+DBNAME=$1
+PORT=$2
+USER=$3
+SCALE=$4
+
+# Fails if a hot menu query plans a sequential scan on data copied SCALE times
+# Example: source ./plancheck.sh flightDB 5432 user 50
+java -cp lib/*:bin/ PlanCheck $DBNAME $PORT $USER $SCALE
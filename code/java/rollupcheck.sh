@@ -0,0 +1,9 @@
+#! /bin/bash
+DBNAME=$1
+PORT=$2
+USER=$3
+REBUILD=$4
+
+# Compares the repair rollups with a full recompute; pass --rebuild to fix them
+# Example: source ./rollupcheck.sh flightDB 5432 user
+java -cp lib/*:bin/ RepairRollups $DBNAME $PORT $USER $REBUILD
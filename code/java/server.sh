@@ -0,0 +1,9 @@
+#! /bin/bash
+DBNAME=$1
+PORT=$2
+USER=$3
+HTTP_PORT=$4
+
+# Serves the menu operations as JSON on HTTP_PORT (8080 when omitted)
+# Example: source ./server.sh flightDB 5432 user 8080
+java -cp lib/*:bin/ ApiServer $DBNAME $PORT $USER $HTTP_PORT
@@ -0,0 +1,126 @@
+/**
+ * The tables of code/sql/create.sql: their columns in the order the CSV
+ * files in code/data list them, the data file each is loaded from and the
+ * tables their foreign keys point to.
+ *
+ */
+
+public final class AirlineSchema {
+	public static final class Table {
+		public final String name;
+		public final String file;
+		public final String[] columns;
+		public final String[] references;
+
+		Table(String name, String file, String[] columns, String[] references) {
+			this.name = name;
+			this.file = file;
+			this.columns = columns;
+			this.references = references;
+		}
+
+		/**
+		 * Method to build the column list of an INSERT or COPY, such as
+		 * "Plane (id, make, model, age, seats)".
+		 */
+		public String target() {
+			StringBuilder sb = new StringBuilder(this.name).append(" (");
+			for (int i = 0; i < this.columns.length; ++i)
+				sb.append(i == 0 ? "" : ", ").append(this.columns[i]);
+			return sb.append(")").toString();
+		}
+
+		public String toString() {
+			return this.name;
+		}
+	}
+
+	public static final Table CUSTOMER = new Table("Customer", "customer.csv",
+		new String[] { "id", "fname", "lname", "gtype", "dob", "address", "phone", "zipcode" },
+		new String[0]);
+	public static final Table PILOT = new Table("Pilot", "pilots.csv",
+		new String[] { "id", "fullname", "nationality" },
+		new String[0]);
+	public static final Table PLANE = new Table("Plane", "planes.csv",
+		new String[] { "id", "make", "model", "age", "seats" },
+		new String[0]);
+	public static final Table TECHNICIAN = new Table("Technician", "technician.csv",
+		new String[] { "id", "full_name" },
+		new String[0]);
+	public static final Table FLIGHT = new Table("Flight", "flights.csv",
+		new String[] { "fnum", "cost", "num_sold", "num_stops", "actual_departure_date",
+			"actual_arrival_date", "arrival_airport", "departure_airport" },
+		new String[0]);
+	public static final Table RESERVATION = new Table("Reservation", "reservation.csv",
+		new String[] { "rnum", "cid", "fid", "status" },
+		new String[] { "Customer", "Flight" });
+	public static final Table FLIGHT_INFO = new Table("FlightInfo", "flightinfo.csv",
+		new String[] { "fiid", "flight_id", "pilot_id", "plane_id" },
+		new String[] { "Flight", "Pilot", "Plane" });
+	public static final Table REPAIRS = new Table("Repairs", "repairs.csv",
+		new String[] { "rid", "repair_date", "repair_code", "pilot_id", "plane_id", "technician_id" },
+		new String[] { "Pilot", "Plane", "Technician" });
+	public static final Table SCHEDULE = new Table("Schedule", "schedule.csv",
+		new String[] { "id", "flightNum", "departure_time", "arrival_time" },
+		new String[] { "Flight" });
+
+	// every table before the tables that reference it, as create.sql loads them
+	public static final Table[] TABLES = {
+		CUSTOMER, PILOT, PLANE, TECHNICIAN, FLIGHT, RESERVATION, FLIGHT_INFO, REPAIRS, SCHEDULE
+	};
+
+	/**
+	 * A table kept from one of the tables above by a row trigger, such as
+	 * FlightStatusCount, and the set-based query its script in code/sql
+	 * fills it with from the rows already loaded.
+	 */
+	public static final class Derived {
+		public final String name;
+		public final Table source;
+		public final String trigger;
+		public final String refill;
+
+		Derived(String name, Table source, String trigger, String refill) {
+			this.name = name;
+			this.source = source;
+			this.trigger = trigger;
+			this.refill = refill;
+		}
+
+		public String toString() {
+			return this.name;
+		}
+	}
+
+	public static final Derived FLIGHT_STATUS_COUNT = new Derived("FlightStatusCount", RESERVATION,
+		"reservation_status_count", "INSERT INTO FlightStatusCount (fid, waitlisted, confirmed, reserved)"
+		+ " SELECT fid, COUNT(*) FILTER (WHERE status = 'W'), COUNT(*) FILTER (WHERE status = 'C'),"
+		+ " COUNT(*) FILTER (WHERE status = 'R') FROM Reservation GROUP BY fid;");
+	public static final Derived REPAIRS_PER_PLANE = new Derived("RepairsPerPlane", REPAIRS,
+		"repairs_rollup", "INSERT INTO RepairsPerPlane (plane_id, total)"
+		+ " SELECT plane_id, COUNT(*) FROM Repairs GROUP BY plane_id;");
+	public static final Derived REPAIRS_PER_YEAR = new Derived("RepairsPerYear", REPAIRS,
+		"repairs_rollup", "INSERT INTO RepairsPerYear (repair_year, total)"
+		+ " SELECT CAST(EXTRACT(YEAR FROM repair_date) AS INTEGER), COUNT(*) FROM Repairs GROUP BY 1;");
+
+	// the derived tables, emptied and refilled together with the tables
+	// above; each is only present once its script in code/sql has been run
+	public static final Derived[] DERIVED = { FLIGHT_STATUS_COUNT, REPAIRS_PER_PLANE, REPAIRS_PER_YEAR };
+
+	private AirlineSchema() {
+	}
+
+	/**
+	 * Method to look a table up by name, ignoring case.
+	 *
+	 * @param name the table name, such as reservation
+	 * @return the table
+	 * @throws IllegalArgumentException when there is no such table
+	 */
+	public static Table table(String name) {
+		for (Table table : TABLES)
+			if (table.name.equalsIgnoreCase(name))
+				return table;
+		throw new IllegalArgumentException("Unknown table: " + name);
+	}
+}//end AirlineSchema
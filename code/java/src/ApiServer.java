@@ -0,0 +1,360 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the menu operations as JSON over HTTP, so many agents can share
+ * one process and its connection pool instead of one console each.  Built
+ * on the JDK's com.sun.net.httpserver; each request runs on a virtual
+ * thread when the JVM has them (Java 21 and later) and on a fixed pool of
+ * FALLBACK_THREADS platform threads otherwise.  A request blocked on the
+ * database waits in the connection pool, so the pool bounds the load put on
+ * the database whatever the number of requests in flight.
+ *
+ *	POST   /planes                         {"make","model","age","seats"}            option 1
+ *	POST   /pilots                         {"fullname","nationality"}                option 2
+ *	POST   /flights                        {"pilot_id","plane_id","cost","num_sold",
+ *	                                        "num_stops","actual_departure_date",
+ *	                                        "actual_arrival_date","arrival_airport",
+ *	                                        "departure_airport"}                      option 3
+ *	POST   /technicians                    {"full_name"}                             option 4
+ *	POST   /bookings                       {"cid","fnum","status"}, and the customer
+ *	                                        fields to add a new customer              option 5
+ *	GET    /flights/{fnum}/seats?date=     seats left per plane                      option 6
+ *	GET    /reports/repairs-per-plane                                                option 7
+ *	GET    /reports/repairs-per-year                                                 option 8
+ *	GET    /flights/{fnum}/passengers?status=                                        option 9
+ *	DELETE /bookings/{rnum}                                                          option 10
+ *	POST   /repairs                        {"repair_date","repair_code","pilot_id",
+ *	                                        "plane_id","technician_id"}               option 13
+ *
+ * Results are the rows written or read, as JSON objects keyed by column
+ * name.  A request the schema rejects, including one naming a customer,
+ * flight, pilot or plane that does not exist, answers 400; a sold out
+ * flight 409; seats of a flight not departing on the date, or a
+ * reservation that does not exist, 404.  Errors come as {"error": message}.
+ *
+ * Usage: java -cp lib/*:bin/ ApiServer <dbname> <port> <user> [http port]
+ *
+ */
+
+public class ApiServer {
+	static final int DEFAULT_HTTP_PORT = 8080;
+	// request threads when the JVM has no virtual threads
+	static final int FALLBACK_THREADS = 64;
+	// connections the server may queue before accepting them
+	static final int BACKLOG = 1024;
+	static final String JSON = "application/json; charset=utf-8";
+
+	private final DBproject esql;
+
+	public ApiServer(DBproject esql) {
+		this.esql = esql;
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.err.println(
+				"Usage: java [-classpath <classpath>] " + ApiServer.class.getName() +
+				" <dbname> <port> <user> [http port]");
+			return;
+		}//end if
+
+		try {
+			Class.forName("org.postgresql.Driver");
+			int httpPort = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_HTTP_PORT;
+			final DBproject esql = new DBproject(args[0], args[1], args[2], "");
+			final HttpServer server = HttpServer.create(new InetSocketAddress(httpPort), BACKLOG);
+			final ExecutorService executor = requestExecutor();
+			server.createContext("/", new ApiServer(esql).handler());
+			server.setExecutor(executor);
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				public void run() {
+					server.stop(1);
+					executor.shutdown();
+					esql.cleanup();
+				}
+			}));
+			server.start();
+			System.out.println("Serving on port " + httpPort);
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Method to create the executor requests run on: one virtual thread per
+	 * request where the JVM has them, looked up by reflection so that the
+	 * project still builds and runs on older JDKs.
+	 */
+	static ExecutorService requestExecutor() {
+		try {
+			ExecutorService executor = (ExecutorService) Executors.class
+				.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			System.out.println("Running requests on virtual threads");
+			return executor;
+		} catch (ReflectiveOperationException e) {
+			System.out.println("No virtual threads in this JVM, running requests on "
+				+ FALLBACK_THREADS + " threads");
+			return Executors.newFixedThreadPool(FALLBACK_THREADS);
+		}
+	}
+
+	HttpHandler handler() {
+		return new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				int status;
+				String body;
+				// numbers in the path are ids, so /bookings/12 and /bookings/13 are one operation
+				Metrics.Operation operation = Metrics.begin(exchange.getRequestMethod() + " "
+					+ exchange.getRequestURI().getPath().replaceAll("/\\d+", "/{n}"));
+				try {
+					Response response = route(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+						query(exchange.getRequestURI().getRawQuery()), exchange.getRequestBody());
+					status = response.status;
+					body = response.body;
+				} catch (SQLException e) {
+					status = statusOf(e);
+					body = Json.object("error", e.getMessage());
+				} catch (IllegalArgumentException e) {
+					// also a NumberFormatException from a bad number
+					status = 400;
+					body = Json.object("error", e.getMessage());
+				} catch (Exception e) {
+					status = 500;
+					body = Json.object("error", String.valueOf(e.getMessage()));
+				} finally {
+					Metrics.end(operation);
+				}
+				byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", JSON);
+				exchange.sendResponseHeaders(status, bytes.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(bytes);
+				out.close();
+			}
+		};
+	}
+
+	/**
+	 * Method to run the operation a request names.
+	 *
+	 * @param method the HTTP method
+	 * @param path the request path, such as /flights/12/seats
+	 * @param query the decoded query parameters
+	 * @param body the request body, read only by the POST operations
+	 * @return the status and JSON body of the response
+	 */
+	Response route(String method, String path, Map<String, String> query, InputStream body)
+			throws SQLException, IOException {
+		String[] parts = path.replaceAll("^/+|/+$", "").split("/");
+		String resource = parts[0];
+
+		if (method.equals("POST") && parts.length == 1) {
+			Map<String, Object> fields = Json.parseObject(read(body));
+			if (resource.equals("planes"))
+				return created(this.esql.executeUpdateAndReturnTable(DBproject.INSERT_PLANE,
+					this.esql.nextId(KeyAllocator.PLANE), text(fields, "make"), text(fields, "model"),
+					integer(fields, "age"), integer(fields, "seats")));
+			if (resource.equals("pilots"))
+				return created(this.esql.executeUpdateAndReturnTable(DBproject.INSERT_PILOT,
+					this.esql.nextId(KeyAllocator.PILOT), text(fields, "fullname"), text(fields, "nationality")));
+			if (resource.equals("technicians"))
+				return created(this.esql.executeUpdateAndReturnTable(DBproject.INSERT_TECHNICIAN,
+					this.esql.nextId(KeyAllocator.TECHNICIAN), text(fields, "full_name")));
+			if (resource.equals("flights"))
+				return addFlight(fields);
+			if (resource.equals("bookings"))
+				return book(fields);
+			if (resource.equals("repairs")) {
+				int rid = this.esql.getRepairs().record(date(fields, "repair_date"), text(fields, "repair_code"),
+					integer(fields, "pilot_id"), integer(fields, "plane_id"), integer(fields, "technician_id"));
+				return new Response(201, Json.object("rid", rid));
+			}
+		}
+		if (method.equals("GET") && resource.equals("flights") && parts.length == 3) {
+			int fnum = Integer.parseInt(parts[1]);
+			if (parts[2].equals("seats")) {
+				int[] seats = this.esql.getAvailability().getAvailableSeats(fnum,
+					java.sql.Date.valueOf(required(query, "date")));
+				if (seats.length == 0)
+					return notFound("No flight number " + fnum + " departs on " + query.get("date"));
+				StringBuilder out = new StringBuilder("{\"fnum\":").append(fnum).append(",\"available_seats\":[");
+				for (int i = 0; i < seats.length; ++i)
+					out.append(i == 0 ? "" : ",").append(seats[i]);
+				return new Response(200, out.append("]}").toString());
+			}
+			if (parts[2].equals("passengers")) {
+				String status = required(query, "status").toUpperCase();
+				if (status.length() != 1 || "WRC".indexOf(status.charAt(0)) < 0)
+					throw new IllegalArgumentException("status must be W, R or C");
+				ResultTable count = this.esql.executeQueryAndReturnTable(DBproject.STATUS_COUNT, status, fnum);
+				return new Response(200, Json.writeRow(count, 0));
+			}
+		}
+		if (method.equals("GET") && resource.equals("reports") && parts.length == 2) {
+			if (parts[1].equals("repairs-per-plane"))
+				return new Response(200, Json.write(this.esql.executeQueryAndReturnTable(RepairRollups.PER_PLANE)));
+			if (parts[1].equals("repairs-per-year"))
+				return new Response(200, Json.write(this.esql.executeQueryAndReturnTable(RepairRollups.PER_YEAR)));
+		}
+		if (method.equals("DELETE") && resource.equals("bookings") && parts.length == 2) {
+			int rnum = Integer.parseInt(parts[1]);
+			ResultTable cancelled = this.esql.getBooking().cancel(rnum);
+			if (cancelled.getRowCount() == 0)
+				return notFound("Reservation " + rnum + " does not exist");
+			return new Response(200, Json.writeRow(cancelled, 0));
+		}
+		return notFound("No operation " + method + " " + path);
+	}
+
+	/*
+	 * Adds a flight and assigns its pilot and plane in one transaction, so
+	 * a pilot or plane that does not exist leaves no flight behind.
+	 */
+	private Response addFlight(Map<String, Object> fields) throws SQLException {
+		int fnum = this.esql.nextId(KeyAllocator.FLIGHT);
+		int fiid = this.esql.nextId(KeyAllocator.FLIGHT_INFO);
+		PooledConnection conn = this.esql.borrowConnection();
+		try {
+			Connection raw = conn.getConnection();
+			raw.setAutoCommit(false);
+			ResultTable flight = this.esql.executeOn(conn, DBproject.INSERT_FLIGHT, fnum,
+				integer(fields, "cost"), integer(fields, "num_sold"), integer(fields, "num_stops"),
+				date(fields, "actual_departure_date"), date(fields, "actual_arrival_date"),
+				text(fields, "arrival_airport"), text(fields, "departure_airport"));
+			ResultTable info = this.esql.executeOn(conn, DBproject.INSERT_FLIGHT_INFO, fiid, fnum,
+				integer(fields, "pilot_id"), integer(fields, "plane_id"));
+			raw.commit();
+			this.esql.getAvailability().invalidate(fnum);
+			return new Response(201, "{\"flight\":" + Json.writeRow(flight, 0)
+				+ ",\"flight_info\":" + Json.writeRow(info, 0) + "}");
+		} catch (SQLException e) {
+			conn.checkBroken(e);
+			throw e;
+		} finally {
+			// release rolls back if commit was not reached
+			this.esql.releaseConnection(conn);
+		}
+	}
+
+	private Response book(Map<String, Object> fields) throws SQLException {
+		int cid = integer(fields, "cid");
+		int fnum = integer(fields, "fnum");
+		String status = text(fields, "status").toUpperCase();
+		if (status.length() != 1)
+			throw new IllegalArgumentException("status must be W, R or C");
+		ResultTable reservation;
+		if (fields.containsKey("fname"))
+			reservation = this.esql.getBooking().book(cid, fnum, status.charAt(0),
+				text(fields, "fname"), text(fields, "lname"), text(fields, "gtype"), date(fields, "dob"),
+				optional(fields, "address"), optional(fields, "phone"), optional(fields, "zipcode"));
+		else
+			reservation = this.esql.getBooking().book(cid, fnum, status.charAt(0));
+		return created(reservation);
+	}
+
+	private static Response created(ResultTable rows) {
+		return new Response(201, Json.writeRow(rows, 0));
+	}
+
+	private static Response notFound(String message) {
+		return new Response(404, Json.object("error", message));
+	}
+
+	// the HTTP status of a failed statement
+	static int statusOf(SQLException e) {
+		if (BookingEngine.isSoldOut(e))
+			return 409;
+		String state = e.getSQLState();
+		// data exceptions and integrity violations: a value the schema rejects
+		// or a customer, flight, pilot or plane that does not exist
+		if (state != null && (state.startsWith("22") || state.startsWith("23")))
+			return 400;
+		return 500;
+	}
+
+	private static String read(InputStream body) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int n;
+		while ((n = body.read(buffer)) > 0)
+			bytes.write(buffer, 0, n);
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	static Map<String, String> query(String raw) throws IOException {
+		Map<String, String> params = new HashMap<String, String>();
+		if (raw == null)
+			return params;
+		for (String pair : raw.split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq > 0)
+				params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+					URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+		}
+		return params;
+	}
+
+	private static String required(Map<String, String> query, String name) {
+		String value = query.get(name);
+		if (value == null)
+			throw new IllegalArgumentException("Missing query parameter " + name);
+		return value;
+	}
+
+	private static String text(Map<String, Object> fields, String name) {
+		Object value = fields.get(name);
+		if (value == null)
+			throw new IllegalArgumentException("Missing field " + name);
+		return value.toString();
+	}
+
+	private static String optional(Map<String, Object> fields, String name) {
+		Object value = fields.get(name);
+		return value == null ? null : value.toString();
+	}
+
+	private static int integer(Map<String, Object> fields, String name) {
+		Object value = fields.get(name);
+		if (value instanceof Long) {
+			long number = (Long) value;
+			if (number < Integer.MIN_VALUE || number > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("Field " + name + " is out of range");
+			return (int) number;
+		}
+		if (value instanceof String)
+			return Integer.parseInt((String) value);
+		throw new IllegalArgumentException("Field " + name + " must be an integer");
+	}
+
+	private static java.sql.Date date(Map<String, Object> fields, String name) {
+		// throws an IllegalArgumentException unless the date is yyyy-mm-dd
+		return java.sql.Date.valueOf(text(fields, name));
+	}
+
+	// the status and JSON body of a response
+	static final class Response {
+		final int status;
+		final String body;
+
+		Response(int status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+	}
+}//end ApiServer
@@ -0,0 +1,120 @@
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs DBproject queries and updates on worker threads and hands back
+ * CompletableFutures, so a caller can start several statements and wait
+ * for all of them, each on its own pooled connection, instead of running
+ * them one after another.
+ *
+ * There is one worker per connection the pool may open, since a worker
+ * spends its time holding a connection, and at most DEFAULT_QUEUE_SIZE
+ * (or -Ddbproject.async.queue) statements wait for a worker.  A statement
+ * submitted beyond that fails at once with a RejectedExecutionException
+ * rather than piling up.
+ *
+ *	AsyncExecutor async = esql.getAsync();
+ *	CompletableFuture<ResultTable> perPlane = async.query(RepairRollups.PER_PLANE);
+ *	CompletableFuture<ResultTable> perYear = async.query(RepairRollups.PER_YEAR);
+ *	CompletableFuture.allOf(perPlane, perYear).join();
+ *
+ */
+
+public class AsyncExecutor {
+	static final int DEFAULT_QUEUE_SIZE = 1000;
+
+	private final DBproject esql;
+	private final ThreadPoolExecutor workers;
+
+	public AsyncExecutor(DBproject esql, int threads, int queueSize) {
+		this.esql = esql;
+		final AtomicInteger count = new AtomicInteger();
+		this.workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "async-query-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		// idle workers exit, so an executor that is not used costs no threads
+		this.workers.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Method to run a query on a worker thread.
+	 *
+	 * @return completes with every row of the result, or exceptionally with
+	 *   the SQLException of the query
+	 */
+	public CompletableFuture<ResultTable> query(final String query, final Object... params) {
+		return submit(new Callable<ResultTable>() {
+			public ResultTable call() throws SQLException {
+				return esql.executeQueryAndReturnTable(query, params);
+			}
+		});
+	}
+
+	/**
+	 * Method to run an update on a worker thread.
+	 *
+	 * @return completes with the number of rows changed
+	 */
+	public CompletableFuture<Integer> update(final String sql, final Object... params) {
+		return submit(new Callable<Integer>() {
+			public Integer call() throws SQLException {
+				return esql.executeUpdate(sql, params);
+			}
+		});
+	}
+
+	/**
+	 * Method to run any work against the database on a worker thread, such
+	 * as a BookingEngine or AvailabilityCache call.
+	 *
+	 * @return completes with the result of the work, or exceptionally with
+	 *   what it threw; a RejectedExecutionException when too many
+	 *   statements are already waiting
+	 */
+	public <T> CompletableFuture<T> submit(final Callable<T> work) {
+		final CompletableFuture<T> result = new CompletableFuture<T>();
+		// the round trips of the work count toward the submitter's operation
+		final Metrics.Operation operation = Metrics.current();
+		try {
+			this.workers.execute(new Runnable() {
+				public void run() {
+					Metrics.Operation previous = Metrics.attach(operation);
+					try {
+						result.complete(work.call());
+					} catch (Throwable e) {
+						result.completeExceptionally(e);
+					} finally {
+						Metrics.attach(previous);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			result.completeExceptionally(e);
+		}
+		return result;
+	}
+
+	/**
+	 * Method to finish the statements already submitted and stop the workers.
+	 */
+	public void close() {
+		this.workers.shutdown();
+		try {
+			this.workers.awaitTermination(DBproject.POOL_BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}//end AsyncExecutor
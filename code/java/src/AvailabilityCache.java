@@ -0,0 +1,247 @@
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used, read-through cache of the seats left on each
+ * flight, the answer of option 6, keyed by flight number and departure
+ * date.  A hit is a memory read instead of a join of Plane, FlightInfo and
+ * Flight.
+ *
+ * Every write made through this process that changes a flight's free seats
+ * (BookingEngine bookings and cancellations, FlightInfo inserts) invalidates
+ * the flight's entry.  Entries also expire after a time to live, which
+ * bounds how stale an entry can get when another process books seats.
+ *
+ * writeAvailableSeats answers for a whole departure date range or list of
+ * flights with one set-based query, streaming the rows to a ResultSink, and
+ * caches each flight on the way.
+ *
+ * Thread safe.
+ *
+ */
+
+public class AvailabilityCache {
+	static final int DEFAULT_CAPACITY = 10000;
+	static final long DEFAULT_TTL_MILLIS = 5000;
+	// invalidation counters, each shared by the flights numbered alike
+	// modulo this power of two
+	static final int GENERATION_STRIPES = 1024;
+
+	static final String QUERY = "SELECT P.seats - F.num_sold AS Available_Seats FROM Plane P, FlightInfo FI, Flight F"
+		+ " WHERE P.ID = FI.plane_id AND FI.flight_id=F.fnum AND F.fnum= ? AND F.actual_departure_date= ?";
+
+	// the same join for many flights, a flight's planes on consecutive rows
+	static final String BULK_QUERY = "SELECT F.fnum, F.actual_departure_date, P.seats, F.num_sold,"
+		+ " P.seats - F.num_sold AS Available_Seats FROM Plane P, FlightInfo FI, Flight F"
+		+ " WHERE P.ID = FI.plane_id AND FI.flight_id=F.fnum AND ";
+	static final String BY_DATE = BULK_QUERY
+		+ "F.actual_departure_date BETWEEN ? AND ? ORDER BY F.actual_departure_date, F.fnum";
+	// the flight numbers are sent as one array literal, so any number of
+	// flights is a single statement shape
+	static final String BY_FLIGHTS = BULK_QUERY
+		+ "F.fnum = ANY(CAST(? AS INTEGER[])) ORDER BY F.fnum";
+
+	private final DBproject esql;
+	private final long ttlNanos;
+	// flight number to the entry of its last looked up departure date
+	private final LinkedHashMap<Integer, Entry> entries;
+	// counts the invalidations of each stripe of flights, so a value read
+	// before one is not stored after it; a booking on one flight does not
+	// hold back loads of the flights in other stripes
+	private final long[] generations = new long[GENERATION_STRIPES];
+	private long hits = 0;
+	private long misses = 0;
+
+	public AvailabilityCache(DBproject esql, final int capacity, long ttlMillis) {
+		this.esql = esql;
+		this.ttlNanos = ttlMillis * 1000000L;
+		// access order turns the LinkedHashMap into an LRU list
+		this.entries = new LinkedHashMap<Integer, Entry>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Method to look up the seats left on a flight, querying the database
+	 * only when the cache holds no fresh answer.
+	 *
+	 * @param fnum the flight number
+	 * @param date the departure date
+	 * @return the seats left for each plane assigned to the flight, empty
+	 *   when no flight with that number departs on that date
+	 * @throws java.sql.SQLException when the database had to be read and failed
+	 */
+	public int[] getAvailableSeats(int fnum, java.sql.Date date) throws SQLException {
+		long epochDay = date.toLocalDate().toEpochDay();
+		long generation;
+		synchronized (this) {
+			Entry entry = this.entries.get(fnum);
+			if (entry != null && entry.epochDay == epochDay && System.nanoTime() - entry.loadedAt < this.ttlNanos) {
+				this.hits++;
+				return entry.seats.clone();
+			}
+			this.misses++;
+			generation = this.generations[stripe(fnum)];
+		}
+
+		// queried outside the lock so that misses on other flights do not wait
+		long loadedAt = System.nanoTime();
+		ResultTable rows = this.esql.executeQueryAndReturnTable(QUERY, fnum, date);
+		int[] seats = new int[rows.getRowCount()];
+		for (int i = 0; i < seats.length; ++i)
+			seats[i] = rows.getInt(i, 0);
+
+		store(fnum, epochDay, seats, generation, loadedAt);
+		return seats.clone();
+	}
+
+	/**
+	 * Method to list the seats left on every flight departing between two
+	 * dates, in one query whose rows are written as they arrive.  Columns
+	 * are fnum, actual_departure_date, seats, num_sold and Available_Seats,
+	 * one row per plane assigned to a flight.
+	 *
+	 * @param from the first departure date, included
+	 * @param to the last departure date, included
+	 * @param sink receives the rows, such as a ResultWriter
+	 * @return the number of rows written
+	 * @throws java.sql.SQLException when the query failed
+	 */
+	public int writeAvailableSeats(java.sql.Date from, java.sql.Date to, ResultSink sink) throws SQLException {
+		return this.esql.executeQueryAndWrite(BY_DATE, new Loader(sink), from, to);
+	}
+
+	/**
+	 * Method to list the seats left on each of the given flights, in one
+	 * query whose rows are written as they arrive.  Columns are as for the
+	 * date range; flights that do not exist are left out.
+	 *
+	 * @param fnums the flight numbers
+	 * @param sink receives the rows, such as a ResultWriter
+	 * @return the number of rows written
+	 * @throws java.sql.SQLException when the query failed
+	 */
+	public int writeAvailableSeats(int[] fnums, ResultSink sink) throws SQLException {
+		StringBuilder array = new StringBuilder("{");
+		for (int i = 0; i < fnums.length; ++i)
+			array.append(i == 0 ? "" : ",").append(fnums[i]);
+		return this.esql.executeQueryAndWrite(BY_FLIGHTS, new Loader(sink), array.append('}').toString());
+	}
+
+	private static int stripe(int fnum) {
+		return fnum & (GENERATION_STRIPES - 1);
+	}
+
+	private synchronized void store(int fnum, long epochDay, int[] seats, long generation, long loadedAt) {
+		if (generation == this.generations[stripe(fnum)])
+			this.entries.put(fnum, new Entry(epochDay, seats, loadedAt));
+	}
+
+	/**
+	 * Method to drop what is cached for a flight after its seats or planes
+	 * changed.
+	 */
+	public synchronized void invalidate(int fnum) {
+		this.generations[stripe(fnum)]++;
+		this.entries.remove(fnum);
+	}
+
+	public synchronized void clear() {
+		for (int i = 0; i < GENERATION_STRIPES; ++i)
+			this.generations[i]++;
+		this.entries.clear();
+	}
+
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	public synchronized double getHitRate() {
+		long lookups = this.hits + this.misses;
+		return lookups == 0 ? 0 : this.hits / (double) lookups;
+	}
+
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	public synchronized String summary() {
+		return String.format("availability cache: %d entries, %d hits, %d misses, %.1f%% hit rate",
+			this.entries.size(), this.hits, this.misses, getHitRate() * 100);
+	}
+
+	// passes rows on to a sink and caches each flight once all its rows are seen
+	private final class Loader implements ResultSink {
+		private final ResultSink sink;
+		// the generation of every stripe when the query started
+		private final long[] generations;
+		private final long loadedAt = System.nanoTime();
+		private int fnum = -1;
+		private long epochDay;
+		private int[] seats = new int[4];
+		private int planes = 0;
+
+		Loader(ResultSink sink) {
+			this.sink = sink;
+			synchronized (AvailabilityCache.this) {
+				this.generations = AvailabilityCache.this.generations.clone();
+			}
+		}
+
+		public void header(ResultSetMetaData rsmd) throws SQLException {
+			this.sink.header(rsmd);
+		}
+
+		public void row(ResultSet rs) throws SQLException {
+			this.sink.row(rs);
+			int fnum = rs.getInt(1);
+			if (fnum != this.fnum)
+				flushFlight();
+			this.fnum = fnum;
+			this.epochDay = rs.getDate(2).toLocalDate().toEpochDay();
+			if (this.planes == this.seats.length)
+				this.seats = Arrays.copyOf(this.seats, this.planes * 2);
+			this.seats[this.planes++] = rs.getInt(5);
+		}
+
+		public void end(int rowCount) {
+			flushFlight();
+			this.sink.end(rowCount);
+		}
+
+		// the flight being read may be missing rows, so it is not cached
+		public void discard() {
+			this.planes = 0;
+			this.sink.discard();
+		}
+
+		private void flushFlight() {
+			if (this.planes > 0)
+				store(this.fnum, this.epochDay, Arrays.copyOf(this.seats, this.planes),
+					this.generations[stripe(this.fnum)], this.loadedAt);
+			this.planes = 0;
+		}
+	}
+
+	private static final class Entry {
+		final long epochDay;
+		final int[] seats;
+		final long loadedAt;
+
+		Entry(long epochDay, int[] seats, long loadedAt) {
+			this.epochDay = epochDay;
+			this.seats = seats;
+			this.loadedAt = loadedAt;
+		}
+	}
+}//end AvailabilityCache
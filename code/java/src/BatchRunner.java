@@ -0,0 +1,156 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs menu operations read from a script instead of the menu, with no
+ * prompts, for bulk jobs and for timing the real code paths.  Each line is
+ * one command and its arguments separated by white space; blank lines and
+ * lines starting with # are skipped.
+ *
+ *	BOOK <cid> <fnum> <W|R|C>                    option 5, existing customer
+ *	CANCEL <rnum>                                option 10
+ *	AVAIL <fnum> <yyyy-mm-dd>                    option 6
+ *	COUNT <fnum> <W|R|C>                         option 9
+ *	REPAIR <yyyy-mm-dd> <code> <pilot> <plane> <technician>   option 13
+ *
+ * Commands run in order, one at a time, through the same BookingEngine,
+ * AvailabilityCache and RepairIngestor as the menu.  Each result is written
+ * as the line number, a tab and the result; a command that fails is
+ * reported on System.err with its line number and the run goes on.  The
+ * summary, the time of each kind of command and the overall throughput, is
+ * printed on System.err at the end so that the results can be piped on.
+ *
+ *	java -cp lib/*:bin/ DBproject flightDB 5432 user --batch nightly.txt
+ *	cat nightly.txt | java -cp lib/*:bin/ DBproject flightDB 5432 user --batch -
+ *
+ */
+
+public class BatchRunner {
+	private final DBproject esql;
+	private final PrintStream results;
+	// the latencies of each kind of command, in the order first seen
+	private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<String, LatencyHistogram>();
+	private long failures = 0;
+
+	public BatchRunner(DBproject esql, PrintStream results) {
+		this.esql = esql;
+		this.results = results;
+	}
+
+	/**
+	 * Method to run every command of a script and print the summary.
+	 *
+	 * @param script the commands, one per line
+	 * @return the number of commands that failed
+	 * @throws java.io.IOException when the script cannot be read
+	 */
+	public long run(BufferedReader script) throws IOException {
+		long start = System.nanoTime();
+		long commands = 0;
+		int lineNumber = 0;
+		String line;
+		while ((line = script.readLine()) != null) {
+			++lineNumber;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+			String[] args = line.split("\\s+");
+			String command = args[0].toUpperCase();
+			++commands;
+			Metrics.Operation operation = Metrics.begin("batch " + command);
+			long begin = System.nanoTime();
+			try {
+				String result = execute(command, args);
+				histogram(command).record(System.nanoTime() - begin);
+				this.results.println(lineNumber + "\t" + result);
+			} catch (Exception e) {
+				// a bad argument, an unknown command or a failed statement
+				histogram(command).record(System.nanoTime() - begin);
+				this.failures++;
+				System.err.println("line " + lineNumber + ": " + e.getMessage());
+			} finally {
+				Metrics.end(operation);
+			}
+		}
+		this.results.flush();
+		printSummary(commands, System.nanoTime() - start);
+		return this.failures;
+	}
+
+	/**
+	 * Method to run one command.
+	 *
+	 * @param command the command name in upper case
+	 * @param args the command followed by its arguments
+	 * @return the result, on one line
+	 * @throws java.sql.SQLException when the operation failed
+	 * @throws IllegalArgumentException when the command or an argument is not valid
+	 */
+	String execute(String command, String[] args) throws SQLException {
+		if (command.equals("BOOK")) {
+			arguments(args, 3, "BOOK <cid> <fnum> <W|R|C>");
+			ResultTable reservation = this.esql.getBooking().book(Integer.parseInt(args[1]),
+				Integer.parseInt(args[2]), status(args[3]));
+			return "reservation " + reservation.getInt(0, 0) + " " + reservation.getString(0, 3);
+		}
+		if (command.equals("CANCEL")) {
+			arguments(args, 1, "CANCEL <rnum>");
+			ResultTable cancelled = this.esql.getBooking().cancel(Integer.parseInt(args[1]));
+			return cancelled.getRowCount() == 0 ? "no reservation " + args[1] : "cancelled " + args[1];
+		}
+		if (command.equals("AVAIL")) {
+			arguments(args, 2, "AVAIL <fnum> <yyyy-mm-dd>");
+			int[] seats = this.esql.getAvailability().getAvailableSeats(Integer.parseInt(args[1]),
+				java.sql.Date.valueOf(args[2]));
+			StringBuilder result = new StringBuilder("seats");
+			for (int available : seats)
+				result.append(' ').append(available);
+			return result.toString();
+		}
+		if (command.equals("COUNT")) {
+			arguments(args, 2, "COUNT <fnum> <W|R|C>");
+			ResultTable count = this.esql.executeQueryAndReturnTable(DBproject.STATUS_COUNT,
+				String.valueOf(status(args[2])), Integer.parseInt(args[1]));
+			return "count " + count.getLong(0, 0);
+		}
+		if (command.equals("REPAIR")) {
+			arguments(args, 5, "REPAIR <yyyy-mm-dd> <code> <pilot> <plane> <technician>");
+			int rid = this.esql.getRepairs().record(java.sql.Date.valueOf(args[1]), args[2].toUpperCase(),
+				Integer.parseInt(args[3]), Integer.parseInt(args[4]), Integer.parseInt(args[5]));
+			return "repair " + rid;
+		}
+		throw new IllegalArgumentException("Unknown command " + args[0]);
+	}
+
+	private static void arguments(String[] args, int count, String usage) {
+		if (args.length != count + 1)
+			throw new IllegalArgumentException("Usage: " + usage);
+	}
+
+	private static char status(String arg) {
+		if (arg.length() != 1 || "WRC".indexOf(Character.toUpperCase(arg.charAt(0))) < 0)
+			throw new IllegalArgumentException("Status must be W, R or C, got " + arg);
+		return Character.toUpperCase(arg.charAt(0));
+	}
+
+	private LatencyHistogram histogram(String command) {
+		LatencyHistogram histogram = this.latencies.get(command);
+		if (histogram == null) {
+			histogram = new LatencyHistogram();
+			this.latencies.put(command, histogram);
+		}
+		return histogram;
+	}
+
+	private void printSummary(long commands, long nanos) {
+		System.err.println("command\t" + LatencyHistogram.summaryHeader());
+		for (Map.Entry<String, LatencyHistogram> entry : this.latencies.entrySet())
+			System.err.println(entry.getKey() + "\t" + entry.getValue().summary());
+		System.err.println(String.format("%d command(s), %d failed, in %.3f s, %.0f commands/s",
+			commands, this.failures, nanos / 1e9, nanos == 0 ? 0 : commands / (nanos / 1e9)));
+	}
+}//end BatchRunner
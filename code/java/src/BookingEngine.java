@@ -0,0 +1,96 @@
+import java.sql.SQLException;
+
+/**
+ * Books seats through the book_flight function of code/sql/booking.sql.  A
+ * booking used to take up to seven autocommit statements (find the
+ * reservation, the flight and the customer, insert the customer, find the
+ * largest rnum, insert the reservation and read it back), and a failure
+ * between them left the rows written so far behind.  Here the whole booking
+ * is one statement, so it takes one round trip and commits or fails as a
+ * unit.  The reservation number comes from the KeyAllocator and costs no
+ * round trip of its own.
+ *
+ * The function also keeps Flight.num_sold equal to the number of
+ * reservations holding a seat (status R or C), taking a seat only while
+ * the plane has one left, so a booking that would oversell the flight
+ * fails with SQL state BK001 and writes nothing.
+ *
+ * Each booking or cancellation invalidates the flight in the
+ * AvailabilityCache once it has committed.
+ *
+ */
+
+public class BookingEngine {
+	static final String BOOK = "SELECT * FROM book_flight(?, ?, ?, ?);";
+	static final String BOOK_NEW_CUSTOMER = "SELECT * FROM book_flight(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);";
+	static final String CANCEL = "SELECT * FROM cancel_reservation(?);";
+	// SQL state raised by book_flight when the flight has no seat left
+	public static final String SOLD_OUT = "BK001";
+
+	private final DBproject esql;
+
+	public BookingEngine(DBproject esql) {
+		this.esql = esql;
+	}
+
+	/**
+	 * Method to book an existing customer on a flight, or change the status
+	 * of the reservation the customer already holds on it.
+	 *
+	 * @param cid the customer id
+	 * @param fid the flight number
+	 * @param status W, R or C
+	 * @return the final reservation: rnum, cid, fid and status
+	 * @throws java.sql.SQLException when the customer or flight does not
+	 *   exist, the flight is sold out or the status is not valid; nothing
+	 *   is written
+	 */
+	public ResultTable book(int cid, int fid, char status) throws SQLException {
+		ResultTable reservation = this.esql.executeUpdateAndReturnTable(BOOK,
+			this.esql.nextId(KeyAllocator.RESERVATION), cid, fid, status);
+		this.esql.getAvailability().invalidate(fid);
+		return reservation;
+	}
+
+	/**
+	 * Method to book a customer on a flight, adding the customer with the
+	 * given details first when there is none with that id.
+	 *
+	 * @param cid the customer id
+	 * @param fid the flight number
+	 * @param status W, R or C
+	 * @param dob the date of birth
+	 * @return the final reservation: rnum, cid, fid and status
+	 * @throws java.sql.SQLException when the flight does not exist or is
+	 *   sold out or a value is not valid; nothing is written
+	 */
+	public ResultTable book(int cid, int fid, char status, String fname, String lname, String gtype,
+			java.sql.Date dob, String address, String phone, String zipcode) throws SQLException {
+		ResultTable reservation = this.esql.executeUpdateAndReturnTable(BOOK_NEW_CUSTOMER,
+			this.esql.nextId(KeyAllocator.RESERVATION), cid, fid, status,
+			fname, lname, gtype, dob, address, phone, zipcode);
+		this.esql.getAvailability().invalidate(fid);
+		return reservation;
+	}
+
+	/**
+	 * Method to delete a reservation and give its seat back to the flight.
+	 *
+	 * @param rnum the reservation number
+	 * @return the deleted reservation, or no rows when there was none
+	 * @throws java.sql.SQLException when the reservation could not be deleted
+	 */
+	public ResultTable cancel(int rnum) throws SQLException {
+		ResultTable cancelled = this.esql.executeUpdateAndReturnTable(CANCEL, rnum);
+		if (cancelled.getRowCount() > 0)
+			this.esql.getAvailability().invalidate(cancelled.getInt(0, 2));
+		return cancelled;
+	}
+
+	/**
+	 * Method to tell whether a booking failed because the flight is full.
+	 */
+	public static boolean isSoldOut(SQLException e) {
+		return SOLD_OUT.equals(e.getSQLState());
+	}
+}//end BookingEngine
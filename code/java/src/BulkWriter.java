@@ -0,0 +1,209 @@
+import java.io.CharArrayReader;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.postgresql.PGConnection;
+
+/**
+ * Bulk insert for any table of AirlineSchema.  Rows are buffered and sent
+ * in chunks, each chunk in one transaction on one pooled connection: small
+ * chunks as a JDBC batch, which the driver rewrites into multi-row INSERTs
+ * because DBproject connects with reWriteBatchedInserts, and large chunks
+ * through COPY FROM STDIN.
+ *
+ *	BulkWriter writer = new BulkWriter(esql, AirlineSchema.PLANE);
+ *	writer.addRow(101, "Boeing", "737", 12, 180);
+ *	...
+ *	writer.close();
+ *	System.out.println(writer.summary());
+ *
+ */
+
+public class BulkWriter {
+	public enum Mode { AUTO, BATCH, COPY }
+
+	// rows buffered before a chunk is sent
+	static final int CHUNK_ROWS = 50000;
+	// statements per executeBatch call on the batch path
+	static final int BATCH_SIZE = 1000;
+	// in AUTO mode, chunks of at least this many rows go through COPY
+	static final int COPY_THRESHOLD = 5000;
+
+	private final DBproject esql;
+	private final AirlineSchema.Table table;
+	private final Mode mode;
+	private final List<Object[]> pending = new ArrayList<Object[]>();
+	private long rowsWritten = 0;
+	private long nanosWriting = 0;
+
+	public BulkWriter(DBproject esql, AirlineSchema.Table table) {
+		this(esql, table, Mode.AUTO);
+	}
+
+	public BulkWriter(DBproject esql, AirlineSchema.Table table, Mode mode) {
+		this.esql = esql;
+		this.table = table;
+		this.mode = mode;
+	}
+
+	/**
+	 * Method to queue one row.  Values are given in AirlineSchema column
+	 * order; dates may be java.sql.Date, LocalDate or yyyy-mm-dd strings.
+	 *
+	 * @param values one value per column, null for SQL NULL
+	 * @throws java.sql.SQLException when a full chunk fails to be written
+	 */
+	public void addRow(Object... values) throws SQLException {
+		if (values.length != this.table.columns.length)
+			throw new IllegalArgumentException(this.table.name + " takes " + this.table.columns.length
+				+ " values, got " + values.length);
+		this.pending.add(values);
+		if (this.pending.size() >= CHUNK_ROWS)
+			flush();
+	}
+
+	/**
+	 * Method to write every queued row.
+	 *
+	 * @return the number of rows written by this call
+	 * @throws java.sql.SQLException when the chunk fails; none of its rows are kept
+	 */
+	public int flush() throws SQLException {
+		int rows = this.pending.size();
+		if (rows == 0)
+			return 0;
+		long start = System.nanoTime();
+		PooledConnection conn = this.esql.borrowConnection();
+		try {
+			Connection raw = conn.getConnection();
+			raw.setAutoCommit(false);
+			boolean copy = this.mode == Mode.COPY || (this.mode == Mode.AUTO && rows >= COPY_THRESHOLD);
+			if (copy)
+				copy(raw);
+			else
+				batch(conn);
+			raw.commit();
+		} catch (SQLException e) {
+			conn.checkBroken(e);
+			throw e;
+		} finally {
+			// release rolls the transaction back if commit was not reached
+			this.esql.releaseConnection(conn);
+			this.pending.clear();
+		}
+		this.nanosWriting += System.nanoTime() - start;
+		this.rowsWritten += rows;
+		return rows;
+	}
+
+	/**
+	 * Method to write the remaining rows.
+	 */
+	public void close() throws SQLException {
+		flush();
+	}
+
+	public long getRowsWritten() {
+		return this.rowsWritten;
+	}
+
+	public double getRowsPerSecond() {
+		return this.nanosWriting == 0 ? 0 : this.rowsWritten / (this.nanosWriting / 1e9);
+	}
+
+	public String summary() {
+		return String.format("%s: %d rows in %.1f ms (%.0f rows/s)", this.table.name,
+			this.rowsWritten, this.nanosWriting / 1e6, getRowsPerSecond());
+	}
+
+	private void batch(PooledConnection conn) throws SQLException {
+		StringBuilder sql = new StringBuilder("INSERT INTO ").append(this.table.target()).append(" VALUES (");
+		for (int i = 0; i < this.table.columns.length; ++i)
+			sql.append(i == 0 ? "?" : ", ?");
+		sql.append(")");
+
+		PreparedStatement stmt = conn.prepare(sql.toString());
+		try {
+			int inBatch = 0;
+			for (Object[] row : this.pending) {
+				for (int i = 0; i < row.length; ++i)
+					bind(stmt, i + 1, row[i]);
+				stmt.addBatch();
+				if (++inBatch == BATCH_SIZE) {
+					stmt.executeBatch();
+					inBatch = 0;
+				}
+			}
+			if (inBatch > 0)
+				stmt.executeBatch();
+		} finally {
+			// the statement stays in the cache, so leave no rows queued on it
+			stmt.clearBatch();
+		}
+	}
+
+	private void copy(Connection raw) throws SQLException {
+		CharArrayWriter csv = new CharArrayWriter(this.pending.size() * 64);
+		for (Object[] row : this.pending)
+			appendCsv(csv, row);
+		try {
+			raw.unwrap(PGConnection.class).getCopyAPI().copyIn(
+				"COPY " + this.table.target() + " FROM STDIN WITH CSV",
+				new CharArrayReader(csv.toCharArray()));
+		} catch (IOException e) {
+			throw new SQLException("COPY into " + this.table.name + " failed: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Method to append one row in the CSV dialect COPY reads: NULL is an
+	 * empty unquoted field and a value is quoted when it is empty or holds a
+	 * comma, quote or line break.
+	 */
+	static void appendCsv(CharArrayWriter csv, Object[] row) {
+		for (int i = 0; i < row.length; ++i) {
+			if (i > 0)
+				csv.write(',');
+			if (row[i] == null)
+				continue;
+			String value = row[i].toString();
+			boolean quote = value.isEmpty();
+			for (int c = 0; c < value.length() && !quote; ++c) {
+				char ch = value.charAt(c);
+				quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+			}
+			if (!quote) {
+				csv.append(value);
+				continue;
+			}
+			csv.write('"');
+			for (int c = 0; c < value.length(); ++c) {
+				char ch = value.charAt(c);
+				if (ch == '"')
+					csv.write('"');
+				csv.write(ch);
+			}
+			csv.write('"');
+		}
+		csv.write('\n');
+	}
+
+	// strings are sent untyped so that the server casts them to the
+	// column type, the same way COPY reads its text input
+	private static void bind(PreparedStatement stmt, int index, Object value) throws SQLException {
+		if (value == null)
+			stmt.setNull(index, Types.NULL);
+		else if (value instanceof java.time.LocalDate)
+			stmt.setDate(index, java.sql.Date.valueOf((java.time.LocalDate) value));
+		else if (value instanceof String || value instanceof Character)
+			stmt.setObject(index, value.toString(), Types.OTHER);
+		else
+			stmt.setObject(index, value);
+	}
+}//end BulkWriter
@@ -0,0 +1,263 @@
+import java.sql.DriverManager;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of physical PostgreSQL connections.  The pool keeps at
+ * least minSize connections open, never opens more than maxSize, closes
+ * idle connections above minSize after idleTimeoutMillis and validates a
+ * connection before handing it out if it has been idle for a while.
+ *
+ */
+
+public class ConnectionPool {
+	// how long a connection may sit idle before it is validated on borrow
+	static final long VALIDATION_INTERVAL_MILLIS = 5000;
+	// seconds the driver is given to answer a validation round trip
+	static final int VALIDATION_TIMEOUT_SECONDS = 2;
+	// how often a borrower retries opening while the evictor holds a connection
+	static final long EVICTION_WAIT_MILLIS = 50;
+
+	private final String url;
+	private final String user;
+	private final String passwd;
+	private final int minSize;
+	private final int maxSize;
+	private final long idleTimeoutMillis;
+	private final long borrowTimeoutMillis;
+
+	// most recently returned connection sits at the head of the deque
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+	// one permit per connection that may be handed out
+	private final Semaphore permits;
+	// number of physical connections currently open
+	private final AtomicInteger openCount = new AtomicInteger();
+	private final Thread evictor;
+	private volatile boolean closed = false;
+
+	public ConnectionPool(String url, String user, String passwd, int minSize, int maxSize,
+			long idleTimeoutMillis, long borrowTimeoutMillis) throws SQLException {
+		if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+			throw new IllegalArgumentException("Invalid pool size: min=" + minSize + " max=" + maxSize);
+		this.url = url;
+		this.user = user;
+		this.passwd = passwd;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.permits = new Semaphore(maxSize, true);
+
+		// open the minimum number of connections up front so that a bad
+		// url or password fails here and not on the first menu operation
+		for (int i = 0; i < minSize; ++i)
+			this.idle.addLast(open());
+
+		this.evictor = new Thread(new Runnable() {
+			public void run() {
+				evictLoop();
+			}
+		}, "ConnectionPool-evictor");
+		this.evictor.setDaemon(true);
+		this.evictor.start();
+	}
+
+	/**
+	 * Method to borrow a connection from the pool.  Blocks for at most the
+	 * borrow timeout when all maxSize connections are in use.
+	 *
+	 * @return a validated connection that must be handed back with release
+	 * @throws java.sql.SQLException when the pool is closed, the timeout
+	 *         expires or a new physical connection cannot be opened
+	 */
+	public PooledConnection borrow() throws SQLException {
+		if (this.closed)
+			throw new SQLException("Connection pool is closed", "08003");
+		try {
+			if (!this.permits.tryAcquire(this.borrowTimeoutMillis, TimeUnit.MILLISECONDS))
+				throw new SQLException("Timed out after " + this.borrowTimeoutMillis
+						+ " ms waiting for a database connection", "08001");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection", "08001");
+		}
+
+		try {
+			long deadline = System.currentTimeMillis() + this.borrowTimeoutMillis;
+			while (true) {
+				PooledConnection conn = this.idle.pollFirst();
+				if (conn == null) {
+					conn = open();
+					if (conn != null)
+						return conn;
+					// maxSize are open, so the evictor is checking one that is
+					// not borrowed; it either goes back to the idle deque or is
+					// closed, freeing a slot to open, shortly
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0)
+						throw new SQLException("Timed out after " + this.borrowTimeoutMillis
+								+ " ms waiting for a database connection", "08001");
+					conn = this.idle.pollFirst(Math.min(remaining, EVICTION_WAIT_MILLIS), TimeUnit.MILLISECONDS);
+					if (conn == null)
+						continue;
+				}
+				if (isHealthy(conn, VALIDATION_INTERVAL_MILLIS))
+					return conn;
+				discard(conn);
+			}
+		} catch (InterruptedException e) {
+			this.permits.release();
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection", "08001");
+		} catch (SQLException e) {
+			this.permits.release();
+			throw e;
+		} catch (RuntimeException e) {
+			this.permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Method to hand a borrowed connection back to the pool.  Connections
+	 * that were marked broken, or that cannot be reset, are closed.
+	 *
+	 * @param conn the connection obtained from borrow, may be null
+	 */
+	public void release(PooledConnection conn) {
+		if (conn == null)
+			return;
+		try {
+			if (this.closed || conn.isBroken()) {
+				discard(conn);
+				return;
+			}
+			try {
+				Connection raw = conn.getConnection();
+				if (!raw.getAutoCommit()) {
+					raw.rollback();
+					raw.setAutoCommit(true);
+				}
+				conn.touch();
+				this.idle.addFirst(conn);
+			} catch (SQLException e) {
+				discard(conn);
+			}
+		} finally {
+			this.permits.release();
+		}
+	}
+
+	/**
+	 * Method to close every idle connection and refuse further borrows.
+	 * Connections still borrowed are closed when they are released.
+	 */
+	public void close() {
+		this.closed = true;
+		this.evictor.interrupt();
+		PooledConnection conn;
+		while ((conn = this.idle.pollFirst()) != null)
+			discard(conn);
+	}
+
+	public int getMaxSize() {
+		return this.maxSize;
+	}
+
+	public int getOpenCount() {
+		return this.openCount.get();
+	}
+
+	public int getIdleCount() {
+		return this.idle.size();
+	}
+
+	/*
+	 * Opens a physical connection, or returns null when maxSize are already
+	 * open.  The slot is claimed before connecting, so borrowers and the
+	 * evictor racing to open can never go past maxSize between them.
+	 */
+	private PooledConnection open() throws SQLException {
+		int count;
+		do {
+			count = this.openCount.get();
+			if (count >= this.maxSize)
+				return null;
+		} while (!this.openCount.compareAndSet(count, count + 1));
+		boolean opened = false;
+		try {
+			PooledConnection conn = new PooledConnection(DriverManager.getConnection(this.url, this.user, this.passwd));
+			opened = true;
+			return conn;
+		} finally {
+			if (!opened)
+				this.openCount.decrementAndGet();
+		}
+	}
+
+	private void discard(PooledConnection conn) {
+		this.openCount.decrementAndGet();
+		conn.closeQuietly();
+	}
+
+	// a connection that was used recently is trusted, anything older is
+	// pinged so that a restarted server does not surface as a menu error
+	private boolean isHealthy(PooledConnection conn, long trustMillis) {
+		if (conn.isBroken())
+			return false;
+		if (conn.idleMillis() < trustMillis)
+			return true;
+		try {
+			return conn.getConnection().isValid(VALIDATION_TIMEOUT_SECONDS);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void evictLoop() {
+		long period = Math.max(1000, Math.min(this.idleTimeoutMillis / 2, 30000));
+		while (!this.closed) {
+			try {
+				Thread.sleep(period);
+			} catch (InterruptedException e) {
+				return;
+			}
+			evictIdle();
+		}
+	}
+
+	/*
+	 * Closes idle connections past the idle timeout (never going below
+	 * minSize), health checks the remaining idle ones and tops the pool
+	 * back up to minSize.  A connection is taken out of the idle deque
+	 * before it is checked so that borrow can never hand it out meanwhile.
+	 */
+	void evictIdle() {
+		for (PooledConnection conn : this.idle.toArray(new PooledConnection[0])) {
+			if (!this.idle.remove(conn))
+				continue; // borrowed in the meantime
+			boolean expired = conn.idleMillis() > this.idleTimeoutMillis
+					&& this.openCount.get() > this.minSize;
+			if (expired || !isHealthy(conn, 0))
+				discard(conn);
+			else
+				this.idle.addLast(conn);
+		}
+
+		while (!this.closed && this.openCount.get() < this.minSize) {
+			try {
+				PooledConnection conn = open();
+				if (conn == null)
+					break; // borrowers opened the rest meanwhile
+				this.idle.addLast(conn);
+			} catch (SQLException e) {
+				// the next borrow will report the problem
+				break;
+			}
+		}
+	}
+}//end ConnectionPool
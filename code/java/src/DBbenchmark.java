@@ -0,0 +1,732 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput benchmarks for DBproject.  Each benchmark runs against a live
+ * database, such as the one started by code/postgresql/startPostgreSQL.sh
+ * and loaded by createPostgreDB.sh, and cleans up the rows it writes.
+ *
+ * Usage: java -cp lib/*:bin/ DBbenchmark <dbname> <port> <user> <benchmark> [seconds]
+ *
+ * Benchmarks:
+ *   pool        bookings per second as the connection pool grows
+ *   statements  option 6 latency, concatenated SQL vs cached prepared statements
+ *   stream      peak heap while reading a large result, materialized vs streamed
+ *   print       printing a 1M row result, per cell System.out.print vs ResultWriter
+ *   bulk        inserting planes one executeUpdate at a time vs BulkWriter batch and COPY
+ *   booking     booking latency, the old seven statement flow vs BookingEngine
+ *   oversell    many agents booking, changing and cancelling seats on one small
+ *               flight; exits with status 1 if num_sold ever disagrees with the
+ *               reservations or exceeds the plane's seats
+ *   availability  option 6 lookups mixed with bookings, the join every time vs
+ *               AvailabilityCache, with its hit rate
+ *   repairs     repairs recorded per second by many threads, one autocommit
+ *               INSERT each vs RepairIngestor group commit
+ *   dashboard   latency of reports 6 to 9 together, one after another vs in
+ *               parallel through the AsyncExecutor
+ *
+ */
+
+public class DBbenchmark {
+	static final int DEFAULT_SECONDS = 10;
+	// number of concurrent booking agents, independent of the pool size
+	static final int AGENTS = 32;
+	static final int[] POOL_SIZES = { 1, 2, 4, 8, 16, 32 };
+	// warm up iterations discarded before latencies are recorded
+	static final int WARMUP = 1000;
+	// rows inserted per path by the bulk benchmark
+	static final int BULK_ROWS = 20000;
+	// width of the bars printed for a latency distribution
+	static final int HISTOGRAM_WIDTH = 50;
+	// the oversell stress test: seats on its flight, agents and operations per agent
+	static final int OVERSELL_SEATS = 50;
+	static final int OVERSELL_AGENTS = 64;
+	static final int OVERSELL_OPERATIONS = 200;
+	// one operation in this many is a booking in the availability benchmark
+	static final int LOOKUPS_PER_BOOKING = 20;
+
+	public static void main(String[] args) {
+		if (args.length < 4) {
+			System.err.println(
+				"Usage: java [-classpath <classpath>] " + DBbenchmark.class.getName() +
+				" <dbname> <port> <user> <pool|statements|stream|print|bulk|booking|oversell|availability|repairs|dashboard> [seconds]");
+			return;
+		}//end if
+
+		String dbname = args[0];
+		String dbport = args[1];
+		String user = args[2];
+		int seconds = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_SECONDS;
+
+		try {
+			Class.forName("org.postgresql.Driver");
+			if (args[3].equals("pool"))
+				benchmarkPool(dbname, dbport, user, seconds);
+			else if (args[3].equals("statements"))
+				benchmarkStatements(dbname, dbport, user, seconds);
+			else if (args[3].equals("stream"))
+				benchmarkStream(dbname, dbport, user);
+			else if (args[3].equals("print"))
+				benchmarkPrint(dbname, dbport, user);
+			else if (args[3].equals("bulk"))
+				benchmarkBulk(dbname, dbport, user);
+			else if (args[3].equals("booking"))
+				benchmarkBooking(dbname, dbport, user, seconds);
+			else if (args[3].equals("availability"))
+				benchmarkAvailability(dbname, dbport, user, seconds);
+			else if (args[3].equals("repairs"))
+				benchmarkRepairs(dbname, dbport, user, seconds);
+			else if (args[3].equals("dashboard"))
+				benchmarkDashboard(dbname, dbport, user, seconds);
+			else if (args[3].equals("oversell")) {
+				if (!benchmarkOversell(dbname, dbport, user))
+					System.exit(1);
+			}
+			else
+				System.err.println("Unknown benchmark: " + args[3]);
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		}
+	}
+
+	/*
+	 * Bookings per second with AGENTS threads inserting reservations for
+	 * random existing customers and flights, for growing pool sizes.
+	 */
+	static void benchmarkPool(String dbname, String dbport, String user, int seconds) throws Exception {
+		System.out.println("pool_size\tbookings\tbookings_per_sec");
+		for (int poolSize : POOL_SIZES) {
+			DBproject esql = new DBproject(dbname, dbport, user, "", poolSize, poolSize);
+			try {
+				int[] customers = column(esql, "SELECT id FROM Customer;");
+				int[] flights = column(esql, "SELECT fnum FROM Flight;");
+				int base = column(esql, "SELECT COALESCE(MAX(rnum), 0) FROM Reservation;")[0];
+
+				long bookings = runBookings(esql, customers, flights, base, seconds);
+				System.out.println(poolSize + "\t" + bookings + "\t"
+					+ String.format("%.1f", bookings / (double) seconds));
+
+				esql.executeUpdate("DELETE FROM Reservation WHERE rnum > ?;", base);
+			} finally {
+				esql.cleanup();
+			}
+		}
+	}
+
+	static long runBookings(final DBproject esql, final int[] customers, final int[] flights,
+			int base, int seconds) throws InterruptedException {
+		final AtomicInteger nextRnum = new AtomicInteger(base);
+		final AtomicLong bookings = new AtomicLong();
+		final long deadline = System.nanoTime() + seconds * 1000000000L;
+
+		Thread[] agents = new Thread[AGENTS];
+		for (int t = 0; t < AGENTS; ++t) {
+			final Random random = new Random(t);
+			agents[t] = new Thread(new Runnable() {
+				public void run() {
+					while (System.nanoTime() < deadline) {
+						int cid = customers[random.nextInt(customers.length)];
+						int fid = flights[random.nextInt(flights.length)];
+						try {
+							esql.executeUpdate("INSERT INTO Reservation (rnum, cid, fid, status) VALUES (?, ?, ?, 'R');",
+								nextRnum.incrementAndGet(), cid, fid);
+							bookings.incrementAndGet();
+						} catch (SQLException e) {
+							System.err.println(e.getMessage());
+							return;
+						}
+					}
+				}
+			});
+			agents[t].start();
+		}
+		for (Thread agent : agents)
+			agent.join();
+		return bookings.get();
+	}
+
+	/*
+	 * Latency of the option 6 availability query, first built by string
+	 * concatenation and sent through createStatement as the menu used to,
+	 * then through the cached, server-side prepared statement.
+	 */
+	static void benchmarkStatements(String dbname, String dbport, String user, int seconds) throws Exception {
+		DBproject esql = new DBproject(dbname, dbport, user, "", 1, 1);
+		try {
+			List<List<String>> flights = esql.executeQueryAndReturnResult(
+				"SELECT F.fnum, F.actual_departure_date FROM Flight F, FlightInfo FI WHERE FI.flight_id = F.fnum;");
+			String prepared = "SELECT P.seats - F.num_sold AS Available_Seats FROM Plane P, FlightInfo FI, Flight F"
+				+ " WHERE P.ID = FI.plane_id AND FI.flight_id=F.fnum AND F.fnum= ? AND F.actual_departure_date= ?";
+
+			// before: a new Statement and a freshly parsed and planned query per call
+			PooledConnection conn = esql.borrowConnection();
+			long[] before;
+			try {
+				before = measure(flights, seconds, new Call() {
+					public void run(List<String> flight) throws SQLException {
+						Statement stmt = conn.getConnection().createStatement();
+						ResultSet rs = stmt.executeQuery("SELECT P.seats - F.num_sold AS Available_Seats"
+							+ " FROM Plane P, FlightInfo FI, Flight F WHERE P.ID = FI.plane_id AND FI.flight_id=F.fnum"
+							+ " AND F.fnum= '" + flight.get(0) + "' AND F.actual_departure_date= '" + flight.get(1) + "'");
+						while (rs.next())
+							rs.getInt(1);
+						stmt.close();
+					}
+				});
+			} finally {
+				esql.releaseConnection(conn);
+			}
+
+			// after: the statement cache on the pooled connection
+			long[] after = measure(flights, seconds, new Call() {
+				public void run(List<String> flight) throws SQLException {
+					esql.executeQueryAndReturnResult(prepared,
+						Integer.parseInt(flight.get(0)), java.sql.Date.valueOf(flight.get(1)));
+				}
+			});
+
+			System.out.println("path\tcalls\tmean_us\tp50_us\tp99_us");
+			printLatencies("concatenated", before);
+			printLatencies("prepared", after);
+		} finally {
+			esql.cleanup();
+		}
+	}
+
+	/*
+	 * Peak heap used while reading every reservation repeated 200 times
+	 * (about two million rows with the sample data), first through
+	 * executeQueryAndReturnResult and then through executeQueryAndStream.
+	 */
+	static void benchmarkStream(String dbname, String dbport, String user) throws Exception {
+		DBproject esql = new DBproject(dbname, dbport, user, "", 1, 1);
+		String query = "SELECT R.rnum, R.cid, R.fid, R.status FROM Reservation R, generate_series(1, ?) G;";
+		final Runtime runtime = Runtime.getRuntime();
+		final long[] peak = new long[1];
+		try {
+			System.out.println("path\trows\tpeak_heap_mb\tmillis");
+
+			System.gc();
+			long start = System.nanoTime();
+			List<List<String>> rows = esql.executeQueryAndReturnResult(query, 200);
+			peak[0] = runtime.totalMemory() - runtime.freeMemory();
+			System.out.println("materialized\t" + rows.size() + "\t" + (peak[0] >> 20)
+				+ "\t" + (System.nanoTime() - start) / 1000000);
+			rows = null;
+
+			System.gc();
+			peak[0] = 0;
+			start = System.nanoTime();
+			int count = esql.executeQueryAndStream(query, new RowHandler() {
+				int seen = 0;
+				public void handleRow(ResultSet rs) throws SQLException {
+					rs.getString(4);
+					if (++seen % 10000 == 0)
+						peak[0] = Math.max(peak[0], runtime.totalMemory() - runtime.freeMemory());
+				}
+			}, 200);
+			System.out.println("streamed\t" + count + "\t" + (peak[0] >> 20)
+				+ "\t" + (System.nanoTime() - start) / 1000000);
+		} finally {
+			esql.cleanup();
+		}
+	}
+
+	/*
+	 * Time to print a one million row, reservation shaped result to
+	 * /dev/null.  The old path is the per cell print loop that
+	 * executeQueryAndPrintResult used, on a PrintStream built the way the
+	 * JDK builds System.out (128 byte buffer, autoflush).  The new path is
+	 * a ResultWriter in each of its formats.
+	 */
+	static void benchmarkPrint(String dbname, String dbport, String user) throws Exception {
+		DBproject esql = new DBproject(dbname, dbport, user, "", 1, 1);
+		String query = "SELECT G AS rnum, G % 250 AS cid, G % 2000 AS fid, CAST('C' AS CHAR(1)) AS status"
+			+ " FROM generate_series(1, 1000000) G;";
+		try {
+			System.out.println("path\trows\tmillis\trows_per_sec");
+
+			final PrintStream console = new PrintStream(
+				new BufferedOutputStream(new FileOutputStream("/dev/null"), 128), true);
+			long start = System.nanoTime();
+			int rows = esql.executeQueryAndStream(query, new RowHandler() {
+				boolean outputHeader = true;
+				public void handleRow(ResultSet rs) throws SQLException {
+					ResultSetMetaData rsmd = rs.getMetaData();
+					int numCol = rsmd.getColumnCount();
+					if (outputHeader) {
+						for (int i = 1; i <= numCol; i++)
+							console.print(rsmd.getColumnName(i) + "\t");
+						console.println();
+						outputHeader = false;
+					}
+					for (int i = 1; i <= numCol; ++i)
+						console.print(rs.getString(i) + "\t");
+					console.println();
+				}
+			});
+			printThroughput("System.out.print", rows, System.nanoTime() - start);
+			console.close();
+
+			for (ResultWriter.Format format : ResultWriter.Format.values()) {
+				OutputStream devNull = new FileOutputStream("/dev/null");
+				start = System.nanoTime();
+				rows = esql.executeQueryAndWrite(query, new ResultWriter(devNull, format));
+				printThroughput("ResultWriter " + format, rows, System.nanoTime() - start);
+				devNull.close();
+			}
+		} finally {
+			esql.cleanup();
+		}
+	}
+
+	/*
+	 * Rows per second inserting BULK_ROWS planes: one executeUpdate per
+	 * row, then BulkWriter forced onto its batch path and its COPY path.
+	 * Each run uses ids above the current maximum and deletes them after.
+	 */
+	static void benchmarkBulk(String dbname, String dbport, String user) throws Exception {
+		DBproject esql = new DBproject(dbname, dbport, user, "", 1, 1);
+		try {
+			int base = column(esql, "SELECT COALESCE(MAX(id), 0) FROM Plane;")[0];
+			System.out.println("path\trows\tmillis\trows_per_sec");
+
+			long start = System.nanoTime();
+			for (int i = 1; i <= BULK_ROWS; ++i)
+				esql.executeUpdate("INSERT INTO Plane (id, make, model, age, seats) VALUES (?, ?, ?, ?, ?);",
+					base + i, "Bench", "Model " + i, i % 40, 1 + i % 400);
+			printThroughput("executeUpdate", BULK_ROWS, System.nanoTime() - start);
+			esql.executeUpdate("DELETE FROM Plane WHERE id > ?;", base);
+
+			BulkWriter.Mode[] modes = { BulkWriter.Mode.BATCH, BulkWriter.Mode.COPY };
+			for (BulkWriter.Mode mode : modes) {
+				BulkWriter writer = new BulkWriter(esql, AirlineSchema.PLANE, mode);
+				start = System.nanoTime();
+				for (int i = 1; i <= BULK_ROWS; ++i)
+					writer.addRow(base + i, "Bench", "Model " + i, i % 40, 1 + i % 400);
+				writer.close();
+				printThroughput("BulkWriter " + mode, writer.getRowsWritten(), System.nanoTime() - start);
+				esql.executeUpdate("DELETE FROM Plane WHERE id > ?;", base);
+			}
+		} finally {
+			esql.cleanup();
+		}
+	}
+
+	/*
+	 * Latency of booking a new customer on a random flight.  The old flow
+	 * is the statement sequence BookFlight used to send, each in its own
+	 * autocommit transaction; the new one is a single BookingEngine call.
+	 * Every booking is for a fresh customer id, so both take the longest
+	 * path; the customers and reservations are deleted after each run.
+	 */
+	static void benchmarkBooking(String dbname, String dbport, String user, int seconds) throws Exception {
+		final DBproject esql = new DBproject(dbname, dbport, user, "", 1, 1);
+		try {
+			final int[] flights = column(esql, "SELECT fnum FROM Flight;");
+			final int customerBase = column(esql, "SELECT COALESCE(MAX(id), 0) FROM Customer;")[0];
+			final java.sql.Date dob = java.sql.Date.valueOf("1980-01-01");
+			final AtomicInteger nextCustomer = new AtomicInteger(customerBase);
+			final Random random = new Random(42);
+
+			LatencyHistogram before = measureBookings(seconds, new Runnable() {
+				public void run() {
+					int cid = nextCustomer.incrementAndGet();
+					int fid = flights[random.nextInt(flights.length)];
+					try {
+						esql.executeQueryAndReturnTable("SELECT R.rnum from Reservation R, Customer C, Flight F"
+							+ " WHERE C.id=R.cid AND F.fnum=R.fid AND C.id=? AND F.fnum=?;", cid, fid);
+						esql.executeQuery("SELECT F.fnum FROM Flight F WHERE fnum=?;", fid);
+						esql.executeQuery("SELECT C.id FROM Customer C WHERE C.id=?;", cid);
+						esql.executeUpdate("INSERT INTO Customer (id, fname, lname, gtype, dob, address, phone, zipcode)"
+							+ " VALUES(?, ?, ?, ?, ?, ?, ?, ?);", cid, "Bench", "Customer", "F", dob, "1 Main St", "5550100", "92521");
+						int rnum = esql.executeQueryAndReturnTable("SELECT Max(R.rnum) from Reservation R;").getInt(0, 0) + 1;
+						esql.executeUpdate("INSERT INTO Reservation (rnum, cid, fid, status) VALUES(?, ?, ?, ?);",
+							rnum, cid, fid, 'R');
+						esql.executeQueryAndReturnTable("SELECT R.status FROM Reservation R, Customer C, Flight F"
+							+ " WHERE C.id=R.cid AND F.fnum=R.fid AND C.id=? AND F.fnum=?;", cid, fid);
+					} catch (SQLException e) {
+						throw new IllegalStateException(e.getMessage(), e);
+					}
+				}
+			});
+			deleteBookings(esql, customerBase);
+			esql.getKeys().resync();
+
+			LatencyHistogram after = measureBookings(seconds, new Runnable() {
+				public void run() {
+					int cid = nextCustomer.incrementAndGet();
+					int fid = flights[random.nextInt(flights.length)];
+					try {
+						esql.getBooking().book(cid, fid, 'R',
+							"Bench", "Customer", "F", dob, "1 Main St", "5550100", "92521");
+					} catch (SQLException e) {
+						throw new IllegalStateException(e.getMessage(), e);
+					}
+				}
+			});
+			deleteBookings(esql, customerBase);
+			esql.getKeys().resync();
+
+			System.out.println("path\t" + LatencyHistogram.summaryHeader());
+			System.out.println("statements\t" + before.summary());
+			System.out.println("BookingEngine\t" + after.summary());
+			System.out.println("\nstatements");
+			before.printDistribution(System.out, HISTOGRAM_WIDTH);
+			System.out.println("\nBookingEngine");
+			after.printDistribution(System.out, HISTOGRAM_WIDTH);
+		} finally {
+			esql.cleanup();
+		}
+	}
+
+	/*
+	 * OVERSELL_AGENTS threads, more than the pool has connections, run
+	 * OVERSELL_OPERATIONS random operations each against one new flight
+	 * whose plane has OVERSELL_SEATS seats: book a new customer as R, C or
+	 * W, change the status of one of their bookings, or cancel one.  Far
+	 * more seats are asked for than exist.  After every agent is done,
+	 * num_sold must equal the number of R and C reservations and be at most
+	 * the number of seats.  The flight and everything booked on it is
+	 * deleted afterwards.
+	 */
+	static boolean benchmarkOversell(String dbname, String dbport, String user) throws Exception {
+		final DBproject esql = new DBproject(dbname, dbport, user, "", 1, OVERSELL_AGENTS / 2);
+		final int customerBase = column(esql, "SELECT COALESCE(MAX(id), 0) FROM Customer;")[0];
+		final int plane = esql.nextId(KeyAllocator.PLANE);
+		final int flight = esql.nextId(KeyAllocator.FLIGHT);
+		int flightInfo = esql.nextId(KeyAllocator.FLIGHT_INFO);
+		try {
+			int pilot = column(esql, "SELECT MIN(id) FROM Pilot;")[0];
+			esql.executeUpdate("INSERT INTO Plane (id, make, model, age, seats) VALUES (?, ?, ?, ?, ?);",
+				plane, "Bench", "Oversell", 1, OVERSELL_SEATS);
+			esql.executeUpdate("INSERT INTO Flight (fnum, cost, num_sold, num_stops, actual_departure_date,"
+				+ " actual_arrival_date, arrival_airport, departure_airport) VALUES (?, ?, 0, 0, ?, ?, ?, ?);",
+				flight, 100, java.sql.Date.valueOf("2030-01-01"), java.sql.Date.valueOf("2030-01-01"), "LAX", "SFO");
+			esql.executeUpdate("INSERT INTO FlightInfo (fiid, flight_id, pilot_id, plane_id) VALUES (?, ?, ?, ?);",
+				flightInfo, flight, pilot, plane);
+
+			final java.sql.Date dob = java.sql.Date.valueOf("1980-01-01");
+			final char[] statuses = { 'R', 'C', 'W' };
+			final AtomicInteger nextCustomer = new AtomicInteger(customerBase);
+			final AtomicLong accepted = new AtomicLong();
+			final AtomicLong soldOut = new AtomicLong();
+			final AtomicLong changed = new AtomicLong();
+			final AtomicLong cancelled = new AtomicLong();
+			final AtomicLong failed = new AtomicLong();
+
+			long start = System.nanoTime();
+			Thread[] agents = new Thread[OVERSELL_AGENTS];
+			for (int t = 0; t < OVERSELL_AGENTS; ++t) {
+				final Random random = new Random(t);
+				agents[t] = new Thread(new Runnable() {
+					public void run() {
+						// this agent's bookings as { rnum, cid }
+						List<int[]> booked = new java.util.ArrayList<int[]>();
+						for (int i = 0; i < OVERSELL_OPERATIONS; ++i) {
+							int choice = booked.isEmpty() ? 0 : random.nextInt(4);
+							char status = statuses[random.nextInt(statuses.length)];
+							try {
+								if (choice <= 1) {
+									int cid = nextCustomer.incrementAndGet();
+									ResultTable r = esql.getBooking().book(cid, flight, status,
+										"Bench", "Customer", "F", dob, "1 Main St", "5550100", "92521");
+									booked.add(new int[] { r.getInt(0, 0), cid });
+									accepted.incrementAndGet();
+								} else if (choice == 2) {
+									int[] b = booked.get(random.nextInt(booked.size()));
+									esql.getBooking().book(b[1], flight, status);
+									changed.incrementAndGet();
+								} else {
+									int[] b = booked.remove(random.nextInt(booked.size()));
+									esql.getBooking().cancel(b[0]);
+									cancelled.incrementAndGet();
+								}
+							} catch (SQLException e) {
+								if (BookingEngine.isSoldOut(e)) {
+									soldOut.incrementAndGet();
+								} else {
+									failed.incrementAndGet();
+									System.err.println(e.getMessage());
+								}
+							}
+						}
+					}
+				});
+				agents[t].start();
+			}
+			for (Thread agent : agents)
+				agent.join();
+			long millis = (System.nanoTime() - start) / 1000000;
+
+			int numSold = column(esql, "SELECT num_sold FROM Flight WHERE fnum = ?;", flight)[0];
+			int holding = (int) esql.executeQueryAndReturnTable(
+				"SELECT COUNT(*) FROM Reservation WHERE fid = ? AND status IN ('R', 'C');", flight).getLong(0, 0);
+			boolean ok = numSold == holding && numSold <= OVERSELL_SEATS && failed.get() == 0;
+
+			System.out.println("agents\toperations\tmillis\tbooked\tsold_out\tchanged\tcancelled\terrors");
+			System.out.println(OVERSELL_AGENTS + "\t" + OVERSELL_AGENTS * OVERSELL_OPERATIONS + "\t" + millis
+				+ "\t" + accepted.get() + "\t" + soldOut.get() + "\t" + changed.get() + "\t" + cancelled.get()
+				+ "\t" + failed.get());
+			System.out.println("seats\tnum_sold\tholding_reservations\toversold");
+			System.out.println(OVERSELL_SEATS + "\t" + numSold + "\t" + holding
+				+ "\t" + Math.max(0, holding - OVERSELL_SEATS));
+			System.out.println(ok ? "PASS" : "FAIL");
+			return ok;
+		} finally {
+			esql.executeUpdate("DELETE FROM Reservation WHERE fid = ?;", flight);
+			esql.executeUpdate("DELETE FROM Customer WHERE id > ?;", customerBase);
+			esql.executeUpdate("DELETE FROM FlightInfo WHERE fiid = ?;", flightInfo);
+			esql.executeUpdate("DELETE FROM Flight WHERE fnum = ?;", flight);
+			esql.executeUpdate("DELETE FROM Plane WHERE id = ?;", plane);
+			esql.cleanup();
+		}
+	}
+
+	/*
+	 * AGENTS threads looking up the seats left on random flights, with one
+	 * operation in LOOKUPS_PER_BOOKING booking a new customer on a random
+	 * flight instead.  The bookings are waitlisted, so no seat changes hands,
+	 * but each still invalidates its flight in the cache.  Lookups first run
+	 * the option 6 join every time, then go through AvailabilityCache.
+	 */
+	static void benchmarkAvailability(String dbname, String dbport, String user, int seconds) throws Exception {
+		final DBproject esql = new DBproject(dbname, dbport, user, "", 1, DBproject.DEFAULT_POOL_MAX);
+		final int customerBase = column(esql, "SELECT COALESCE(MAX(id), 0) FROM Customer;")[0];
+		try {
+			final ResultTable flights = esql.executeQueryAndReturnTable(
+				"SELECT F.fnum, F.actual_departure_date FROM Flight F, FlightInfo FI WHERE FI.flight_id = F.fnum;");
+			final AtomicInteger nextCustomer = new AtomicInteger(customerBase);
+
+			System.out.println("path\t" + LatencyHistogram.summaryHeader() + "\tlookups_per_sec");
+			for (final boolean cached : new boolean[] { false, true }) {
+				final LatencyHistogram lookups = new LatencyHistogram();
+				final long deadline = System.nanoTime() + seconds * 1000000000L;
+				Thread[] agents = new Thread[AGENTS];
+				for (int t = 0; t < AGENTS; ++t) {
+					final Random random = new Random(t);
+					agents[t] = new Thread(new Runnable() {
+						public void run() {
+							while (System.nanoTime() < deadline) {
+								int row = random.nextInt(flights.getRowCount());
+								int fnum = flights.getInt(row, 0);
+								try {
+									if (random.nextInt(LOOKUPS_PER_BOOKING) == 0) {
+										esql.getBooking().book(nextCustomer.incrementAndGet(), fnum, 'W', "Bench", "Customer",
+											"F", java.sql.Date.valueOf("1980-01-01"), "1 Main St", "5550100", "92521");
+										continue;
+									}
+									java.sql.Date date = java.sql.Date.valueOf(
+										java.time.LocalDate.ofEpochDay(flights.getEpochDay(row, 1)));
+									long start = System.nanoTime();
+									if (cached)
+										esql.getAvailability().getAvailableSeats(fnum, date);
+									else
+										esql.executeQueryAndReturnTable(AvailabilityCache.QUERY, fnum, date);
+									lookups.record(System.nanoTime() - start);
+								} catch (SQLException e) {
+									System.err.println(e.getMessage());
+									return;
+								}
+							}
+						}
+					});
+					agents[t].start();
+				}
+				for (Thread agent : agents)
+					agent.join();
+				System.out.println((cached ? "AvailabilityCache" : "join") + "\t" + lookups.summary()
+					+ "\t" + String.format("%.0f", lookups.getCount() / (double) seconds));
+				deleteBookings(esql, customerBase);
+			}
+			System.out.println(esql.getAvailability().summary());
+		} finally {
+			esql.cleanup();
+		}
+	}
+
+	/*
+	 * AGENTS threads recording repairs of random planes, by random pilots
+	 * and technicians, as fast as they can.  Each repair is first its own
+	 * autocommit INSERT, one commit per repair, then a RepairIngestor
+	 * record, which waits for the batch it joined to commit.  The repairs
+	 * are deleted after each run.
+	 */
+	static void benchmarkRepairs(String dbname, String dbport, String user, int seconds) throws Exception {
+		final DBproject esql = new DBproject(dbname, dbport, user, "", 1, DBproject.DEFAULT_POOL_MAX);
+		try {
+			final int[] planes = column(esql, "SELECT id FROM Plane;");
+			final int[] pilots = column(esql, "SELECT id FROM Pilot;");
+			final int[] technicians = column(esql, "SELECT id FROM Technician;");
+			final int base = column(esql, "SELECT COALESCE(MAX(rid), 0) FROM Repairs;")[0];
+			final java.sql.Date date = java.sql.Date.valueOf("2015-03-23");
+
+			System.out.println("path\t" + LatencyHistogram.summaryHeader() + "\trepairs_per_sec");
+			for (final boolean grouped : new boolean[] { false, true }) {
+				final LatencyHistogram repairs = new LatencyHistogram();
+				final long deadline = System.nanoTime() + seconds * 1000000000L;
+				Thread[] agents = new Thread[AGENTS];
+				for (int t = 0; t < AGENTS; ++t) {
+					final Random random = new Random(t);
+					agents[t] = new Thread(new Runnable() {
+						public void run() {
+							while (System.nanoTime() < deadline) {
+								String code = RepairIngestor.CODES.get(random.nextInt(RepairIngestor.CODES.size()));
+								int pilot = pilots[random.nextInt(pilots.length)];
+								int plane = planes[random.nextInt(planes.length)];
+								int technician = technicians[random.nextInt(technicians.length)];
+								try {
+									long start = System.nanoTime();
+									if (grouped)
+										esql.getRepairs().record(date, code, pilot, plane, technician);
+									else
+										esql.executeUpdate("INSERT INTO Repairs (rid, repair_date, repair_code, pilot_id,"
+											+ " plane_id, technician_id) VALUES (?, ?, ?, ?, ?, ?);",
+											esql.nextId(KeyAllocator.REPAIR), date, code, pilot, plane, technician);
+									repairs.record(System.nanoTime() - start);
+								} catch (SQLException e) {
+									System.err.println(e.getMessage());
+									return;
+								}
+							}
+						}
+					});
+					agents[t].start();
+				}
+				for (Thread agent : agents)
+					agent.join();
+				System.out.println((grouped ? "RepairIngestor" : "autocommit") + "\t" + repairs.summary()
+					+ "\t" + String.format("%.0f", repairs.getCount() / (double) seconds));
+				esql.executeUpdate("DELETE FROM Repairs WHERE rid > ?;", base);
+			}
+			System.out.println(esql.getRepairs().summary());
+		} finally {
+			esql.cleanup();
+		}
+	}
+
+	/*
+	 * Latency of loading the dashboard of one flight, reports 6, 7, 8 and 9,
+	 * first one report after another on one thread, then fanned out through
+	 * the AsyncExecutor.  The availability cache is cleared before each
+	 * load, so report 6 always reaches the database.
+	 */
+	static void benchmarkDashboard(String dbname, String dbport, String user, int seconds) throws Exception {
+		final DBproject esql = new DBproject(dbname, dbport, user, "", 4, 4);
+		try {
+			ResultTable flight = esql.executeQueryAndReturnTable("SELECT F.fnum, F.actual_departure_date"
+				+ " FROM Flight F, FlightInfo FI WHERE FI.flight_id = F.fnum LIMIT 1;");
+			final int fnum = flight.getInt(0, 0);
+			final java.sql.Date date = java.sql.Date.valueOf(java.time.LocalDate.ofEpochDay(flight.getEpochDay(0, 1)));
+
+			LatencyHistogram sequential = measureBookings(seconds, new Runnable() {
+				public void run() {
+					esql.getAvailability().clear();
+					try {
+						Dashboard.loadSequentially(esql, fnum, date, 'R');
+					} catch (SQLException e) {
+						throw new IllegalStateException(e.getMessage(), e);
+					}
+				}
+			});
+			LatencyHistogram parallel = measureBookings(seconds, new Runnable() {
+				public void run() {
+					esql.getAvailability().clear();
+					try {
+						Dashboard.join(Dashboard.load(esql, fnum, date, 'R'));
+					} catch (SQLException e) {
+						throw new IllegalStateException(e.getMessage(), e);
+					}
+				}
+			});
+
+			System.out.println("path\t" + LatencyHistogram.summaryHeader());
+			System.out.println("sequential\t" + sequential.summary());
+			System.out.println("AsyncExecutor\t" + parallel.summary());
+		} finally {
+			esql.cleanup();
+		}
+	}
+
+	// runs an operation repeatedly for the given time, after WARMUP discarded runs
+	static LatencyHistogram measureBookings(int seconds, Runnable booking) {
+		for (int i = 0; i < WARMUP; ++i)
+			booking.run();
+		LatencyHistogram latencies = new LatencyHistogram();
+		long deadline = System.nanoTime() + seconds * 1000000000L;
+		while (System.nanoTime() < deadline) {
+			long start = System.nanoTime();
+			booking.run();
+			latencies.record(System.nanoTime() - start);
+		}
+		return latencies;
+	}
+
+	static void deleteBookings(DBproject esql, int customerBase) throws SQLException {
+		esql.executeUpdate("DELETE FROM Reservation WHERE cid > ?;", customerBase);
+		esql.executeUpdate("DELETE FROM Customer WHERE id > ?;", customerBase);
+	}
+
+	static void printThroughput(String label, long rows, long nanos) {
+		System.out.println(label + "\t" + rows + "\t" + nanos / 1000000
+			+ "\t" + String.format("%.0f", rows / (nanos / 1e9)));
+	}
+
+	interface Call {
+		void run(List<String> row) throws SQLException;
+	}
+
+	// cycles through the rows for the given time and returns sorted latencies in ns
+	static long[] measure(List<List<String>> rows, int seconds, Call call) throws SQLException {
+		for (int i = 0; i < WARMUP; ++i)
+			call.run(rows.get(i % rows.size()));
+
+		long[] latencies = new long[1024];
+		int count = 0;
+		long deadline = System.nanoTime() + seconds * 1000000000L;
+		while (System.nanoTime() < deadline) {
+			long start = System.nanoTime();
+			call.run(rows.get(count % rows.size()));
+			if (count == latencies.length)
+				latencies = Arrays.copyOf(latencies, count * 2);
+			latencies[count++] = System.nanoTime() - start;
+		}
+		latencies = Arrays.copyOf(latencies, count);
+		Arrays.sort(latencies);
+		return latencies;
+	}
+
+	static void printLatencies(String label, long[] sorted) {
+		if (sorted.length == 0) {
+			System.out.println(label + "\t0");
+			return;
+		}
+		long total = 0;
+		for (long l : sorted)
+			total += l;
+		System.out.println(label + "\t" + sorted.length
+			+ "\t" + String.format("%.1f", total / (double) sorted.length / 1000.0)
+			+ "\t" + String.format("%.1f", sorted[(int) (sorted.length * 0.50)] / 1000.0)
+			+ "\t" + String.format("%.1f", sorted[(int) (sorted.length * 0.99)] / 1000.0));
+	}
+
+	// runs a single column integer query and returns its values
+	static int[] column(DBproject esql, String query, Object... params) throws SQLException {
+		ResultTable rows = esql.executeQueryAndReturnTable(query, params);
+		int[] values = new int[rows.getRowCount()];
+		for (int i = 0; i < values.length; ++i)
+			values[i] = rows.getInt(i, 0);
+		return values;
+	}
+}//end DBbenchmark
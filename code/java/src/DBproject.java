@@ -13,14 +13,20 @@
 
 import java.sql.DriverManager;
 import java.sql.Connection;
-import java.sql.Statement;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.io.File;
 import java.io.FileReader;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Date; // For date and date format validation
@@ -29,8 +35,6 @@ import java.util.InputMismatchException; // For handling invalid input length st
 import java.text.SimpleDateFormat; // For validating date
 import java.text.ParseException; // For validating date
 
-import java.util.Scanner; //for reading single char for input for the status update for bookflight
-
 /**
  * This class defines a simple embedded SQL utility class that is designed to
  * work with PostgreSQL JDBC drivers.
@@ -38,19 +42,104 @@ import java.util.Scanner; //for reading single char for input for the status upd
  */
 
 public class DBproject{
-	//reference to physical database connection
-	private Connection _connection = null;
-	static BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+	// default pool bounds, overridable with -Ddbproject.pool.min / .max
+	static final int DEFAULT_POOL_MIN = 1;
+	static final int DEFAULT_POOL_MAX = 10;
+	// idle connections above the minimum are closed after five minutes
+	static final long POOL_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+	// a menu operation gives up after waiting this long for a connection
+	static final long POOL_BORROW_TIMEOUT_MILLIS = 30 * 1000;
+
+	// rows fetched per round trip when a query is streamed through a cursor
+	static final int DEFAULT_FETCH_SIZE = 1000;
+
+	// tables the --load mode copies at the same time; Customer, Pilot,
+	// Plane, Technician and Flight have no foreign keys between them
+	static final int LOADER_THREADS = 5;
+
+	// the inserts of options 1 to 4, each returning the row written
+	static final String INSERT_PLANE = "INSERT INTO Plane (id, make, model, age, seats) VALUES (?, ?, ?, ?, ?) RETURNING *;";
+	static final String INSERT_PILOT = "INSERT INTO Pilot(id, fullname, nationality) VALUES(?, ?, ?) RETURNING *;";
+	static final String INSERT_TECHNICIAN = "INSERT INTO Technician(id, full_name) VALUES(?, ?) RETURNING *;";
+	static final String INSERT_FLIGHT = "INSERT INTO Flight (fnum, cost, num_sold, num_stops,"
+		+ " actual_departure_date, actual_arrival_date, arrival_airport, departure_airport)"
+		+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?) RETURNING *;";
+	static final String INSERT_FLIGHT_INFO = "INSERT INTO FlightInfo(fiid, flight_id, pilot_id, plane_id) VALUES(?, ?, ?, ?) RETURNING *;";
+
+	// option 9: passengers of a flight with a status, from the counters the
+	// reservation_status_count trigger keeps per flight
+	static final String STATUS_COUNT = "SELECT COALESCE((SELECT CASE ? WHEN 'W' THEN S.waitlisted WHEN 'C' THEN S.confirmed"
+		+ " WHEN 'R' THEN S.reserved END FROM FlightStatusCount S WHERE S.fid= ?), 0) AS Total";
+
+	// executions of a statement before the driver switches to a named
+	// server-side prepared statement
+	static final int PREPARE_THRESHOLD = 1;
+
+	//pool of physical database connections shared by every operation
+	private ConnectionPool _pool = null;
+	// hands out primary keys from blocks reserved with one nextval each
+	private KeyAllocator _keys = new KeyAllocator(this);
+	// books seats in one statement through the book_flight function
+	private BookingEngine _booking = new BookingEngine(this);
+	// seats left per flight for option 6, bounded by -Ddbproject.availability.size
+	// and kept at most -Ddbproject.availability.ttlMillis
+	private AvailabilityCache _availability = new AvailabilityCache(this,
+		Integer.getInteger("dbproject.availability.size", AvailabilityCache.DEFAULT_CAPACITY),
+		Long.getLong("dbproject.availability.ttlMillis", AvailabilityCache.DEFAULT_TTL_MILLIS));
+	// group commit writer for repairs, started on first use
+	private RepairIngestor _repairs = null;
+	// runs statements on worker threads for callers that wait on several,
+	// started on first use
+	private AsyncExecutor _async = null;
+	// statements slower than -Ddbproject.slowQuery.millis, with their plans;
+	// null when no threshold is set
+	private SlowQueryLog _slowLog = null;
+	// the time spent waiting for the user is left out of the operation's latency
+	static BufferedReader in = new BufferedReader(new InputStreamReader(System.in)) {
+		public String readLine() throws IOException {
+			long start = System.nanoTime();
+			try {
+				return super.readLine();
+			} finally {
+				Metrics.inputWait(System.nanoTime() - start);
+			}
+		}
+	};
+	// the name of each menu choice in the operation metrics
+	static final String[] MENU_OPERATIONS = { null, "AddPlane", "AddPilot", "AddFlight", "AddTechnician",
+		"BookFlight", "ListNumberOfAvailableSeats", "ListsTotalNumberOfRepairsPerPlane",
+		"ListTotalNumberOfRepairsPerYear", "FindPassengersCountWithStatus", "CancelReservation",
+		"ListAvailableSeatsInBulk", "ListPassengerCountsForAllFlights", "AddRepair", "ShowDashboard" };
+	// console output for query results, in the format named by
+	// -Ddbproject.output.format (tsv, csv or table); one buffer per thread
+	static final ThreadLocal<ResultWriter> CONSOLE = new ThreadLocal<ResultWriter>() {
+		protected ResultWriter initialValue() {
+			return new ResultWriter(System.out, ResultWriter.parseFormat(System.getProperty("dbproject.output.format")));
+		}
+	};
 	
 	public DBproject(String dbname, String dbport, String user, String passwd) throws SQLException {
+		this(dbname, dbport, user, passwd,
+			Integer.getInteger("dbproject.pool.min", DEFAULT_POOL_MIN),
+			Integer.getInteger("dbproject.pool.max", DEFAULT_POOL_MAX));
+	}
+
+	public DBproject(String dbname, String dbport, String user, String passwd, int poolMin, int poolMax) throws SQLException {
 		System.out.print("Connecting to database...");
 		try{
 			// constructs the connection URL
 			String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
 			System.out.println ("Connection URL: " + url + "\n");
+			// prepare on the server from the first execution; the statement
+			// cache on each connection keeps those statements alive
+			url += "?prepareThreshold=" + PREPARE_THRESHOLD;
+			// let the driver send a JDBC batch of INSERTs as multi-row INSERTs
+			url += "&reWriteBatchedInserts=true";
 			
-			// obtain a physical connection
-	        this._connection = DriverManager.getConnection(url, user, passwd);
+			// opens the pool, which obtains the first physical connections
+			this._pool = new ConnectionPool(url, user, passwd, poolMin, poolMax,
+				POOL_IDLE_TIMEOUT_MILLIS, POOL_BORROW_TIMEOUT_MILLIS);
+			this._slowLog = SlowQueryLog.fromProperties(this);
 	        System.out.println("Done");
 		}catch(Exception e){
 			System.err.println("Error - Unable to Connect to Database: " + e.getMessage());
@@ -58,134 +147,407 @@ public class DBproject{
 	        System.exit(-1);
 		}
 	}
+
+	/**
+	 * Method to borrow a connection for work that spans several statements,
+	 * such as a transaction.  It must be handed back with releaseConnection.
+	 *
+	 * @return a connection from the pool
+	 * @throws java.sql.SQLException when no connection could be obtained
+	 */
+	public PooledConnection borrowConnection() throws SQLException {
+		return this._pool.borrow();
+	}
+
+	/**
+	 * Method to return a connection obtained from borrowConnection.
+	 *
+	 * @param conn the borrowed connection
+	 */
+	public void releaseConnection(PooledConnection conn) {
+		this._pool.release(conn);
+	}
+
+	public ConnectionPool getPool() {
+		return this._pool;
+	}
+
+	/**
+	 * Method to obtain a new primary key for a table, without a round trip
+	 * unless the block reserved from its sequence is used up.
+	 *
+	 * @param sequence one of the KeyAllocator sequence names, such as KeyAllocator.PLANE
+	 * @return a key no other client is given
+	 * @throws java.sql.SQLException when a new block could not be reserved
+	 */
+	public int nextId(String sequence) throws SQLException {
+		return this._keys.next(sequence);
+	}
+
+	public KeyAllocator getKeys() {
+		return this._keys;
+	}
+
+	public BookingEngine getBooking() {
+		return this._booking;
+	}
+
+	public AvailabilityCache getAvailability() {
+		return this._availability;
+	}
+
+	public synchronized RepairIngestor getRepairs() {
+		if (this._repairs == null)
+			this._repairs = new RepairIngestor(this);
+		return this._repairs;
+	}
+
+	public synchronized AsyncExecutor getAsync() {
+		if (this._async == null)
+			this._async = new AsyncExecutor(this, this._pool.getMaxSize(),
+				Integer.getInteger("dbproject.async.queue", AsyncExecutor.DEFAULT_QUEUE_SIZE));
+		return this._async;
+	}
 	
 	/**
 	 * Method to execute an update SQL statement.  Update SQL instructions
 	 * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
 	 * 
-	 * @param sql the input SQL string
+	 * @param sql the input SQL string, with a ? for each parameter
+	 * @param params the values bound to the ? placeholders, in order
+	 * @return the number of rows affected
 	 * @throws java.sql.SQLException when update failed
 	 * */
-	public void executeUpdate (String sql) throws SQLException { 
-		// creates a statement object
-		Statement stmt = this._connection.createStatement ();
+	public int executeUpdate (String sql, Object... params) throws SQLException { 
+		StatementEvent event = new StatementEvent();
+		PooledConnection conn = borrow(event);
+		long start = System.nanoTime();
+		long rows = -1;
+		try{
+			// fetches the cached statement object and binds the parameters
+			PreparedStatement stmt = prepare(conn, sql, params);
+
+			// issues the update instruction
+			rows = stmt.executeUpdate ();
+			return (int) rows;
+		}catch(SQLException e){
+			conn.checkBroken(e);
+			throw e;
+		}finally{
+			finish(sql, params, event, start, rows);
+			this._pool.release(conn);
+		}
+	}//end executeUpdate
 
-		// issues the update instruction
-		stmt.executeUpdate (sql);
+	/**
+	 * Method to execute an INSERT, UPDATE or DELETE with a RETURNING clause
+	 * and return the rows it wrote, so that a write and the read of its
+	 * result take one round trip instead of two.
+	 * 
+	 * @param sql the input SQL string ending in RETURNING, with a ? for each parameter
+	 * @param params the values bound to the ? placeholders, in order
+	 * @return the returned rows as a typed, column oriented table
+	 * @throws java.sql.SQLException when update failed
+	 */
+	public ResultTable executeUpdateAndReturnTable (String sql, Object... params) throws SQLException {
+		StatementEvent event = new StatementEvent();
+		PooledConnection conn = borrow(event);
+		long start = System.nanoTime();
+		long rows = -1;
+		try{
+			// the statement runs in autocommit, so the rows are committed once read
+			ResultSet rs = prepare(conn, sql, params).executeQuery ();
+			ResultTable result = ResultTable.read(rs);
+			rs.close ();
+			rows = result.getRowCount();
+			return result;
+		}catch(SQLException e){
+			conn.checkBroken(e);
+			throw e;
+		}finally{
+			finish(sql, params, event, start, rows);
+			this._pool.release(conn);
+		}
+	}//end executeUpdateAndReturnTable
 
-		// close the instruction
-	    stmt.close ();
-	}//end executeUpdate
+	/**
+	 * Method to execute an INSERT, UPDATE or DELETE with a RETURNING clause
+	 * and output the rows it wrote to standard out.
+	 * 
+	 * @param sql the input SQL string ending in RETURNING, with a ? for each parameter
+	 * @param params the values bound to the ? placeholders, in order
+	 * @return the number of rows written
+	 * @throws java.sql.SQLException when update failed
+	 */
+	public int executeUpdateAndPrintResult (String sql, Object... params) throws SQLException {
+		return executeUpdateAndWrite(sql, CONSOLE.get(), params);
+	}
+
+	/**
+	 * Method to execute an INSERT, UPDATE or DELETE with a RETURNING clause
+	 * and pass the rows it wrote to a result sink.  Unlike
+	 * executeQueryAndWrite no cursor or transaction is opened, since such a
+	 * statement returns only the handful of rows it touched.
+	 * 
+	 * @param sql the input SQL string ending in RETURNING, with a ? for each parameter
+	 * @param sink receives the header, each row and the end of the result
+	 * @param params the values bound to the ? placeholders, in order
+	 * @return the number of rows written
+	 * @throws java.sql.SQLException when update failed
+	 */
+	public int executeUpdateAndWrite (String sql, ResultSink sink, Object... params) throws SQLException {
+		StatementEvent event = new StatementEvent();
+		PooledConnection conn = borrow(event);
+		long start = System.nanoTime();
+		long rows = -1;
+		try{
+			ResultSet rs = prepare(conn, sql, params).executeQuery ();
+			int rowCount = 0;
+			while (rs.next()){
+				// no header when nothing matched, as for a query
+				if (rowCount == 0)
+					sink.header(rs.getMetaData ());
+				sink.row(rs);
+				++rowCount;
+			}//end while
+			rs.close ();
+			sink.end(rowCount);
+			rows = rowCount;
+			return rowCount;
+		}catch(SQLException e){
+			conn.checkBroken(e);
+			throw e;
+		}finally{
+			// rows buffered before a failure must not be printed with the next result
+			if (rows < 0)
+				sink.discard();
+			finish(sql, params, event, start, rows);
+			this._pool.release(conn);
+		}
+	}//end executeUpdateAndWrite
 
 	/**
 	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
 	 * method issues the query to the DBMS and outputs the results to
 	 * standard out.
 	 * 
-	 * @param query the input query string
+	 * @param query the input query string, with a ? for each parameter
+	 * @param params the values bound to the ? placeholders, in order
 	 * @return the number of rows returned
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public int executeQueryAndPrintResult (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
-
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
-
-		/*
-		 *  obtains the metadata object for the returned result set.  The metadata
-		 *  contains row and column info.
-		 */
-		ResultSetMetaData rsmd = rs.getMetaData ();
-		int numCol = rsmd.getColumnCount ();
-		int rowCount = 0;
-		
-		//iterates through the result set and output them to standard out.
-		boolean outputHeader = true;
-		while (rs.next()){
-			if(outputHeader){
-				for(int i = 1; i <= numCol; i++){
-					System.out.print(rsmd.getColumnName(i) + "\t");
-			    }
-			    System.out.println();
-			    outputHeader = false;
-			}
-			for (int i=1; i<=numCol; ++i)
-				System.out.print (rs.getString (i) + "\t");
-			System.out.println ();
-			++rowCount;
-		}//end while
-		stmt.close ();
+	public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+		return executeQueryAndWrite(query, CONSOLE.get(), params);
+	}
+
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT) and
+	 * stream its rows into a result sink, such as a ResultWriter formatting
+	 * them for the console or a report file.
+	 * 
+	 * @param query the input query string, with a ? for each parameter
+	 * @param sink receives the header, each row and the end of the result
+	 * @param params the values bound to the ? placeholders, in order
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int executeQueryAndWrite (String query, final ResultSink sink, Object... params) throws SQLException {
+		int rowCount;
+		try{
+			rowCount = executeQueryAndStream(query, new RowHandler() {
+				boolean outputHeader = true;
+				public void handleRow(ResultSet rs) throws SQLException {
+					if(outputHeader){
+						sink.header(rs.getMetaData ());
+					    outputHeader = false;
+					}
+					sink.row(rs);
+				}
+			}, params);
+		}catch(SQLException e){
+			// rows buffered before a failure must not be printed with the next result
+			sink.discard();
+			throw e;
+		}catch(RuntimeException e){
+			sink.discard();
+			throw e;
+		}
+		sink.end(rowCount);
 		return rowCount;
 	}
+
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT) and hand
+	 * the rows to a callback one at a time.  The query runs inside its own
+	 * transaction with a fetch size set, which makes the PostgreSQL driver
+	 * read the result through a server-side cursor DEFAULT_FETCH_SIZE rows
+	 * at a time instead of buffering all of it, so memory use does not grow
+	 * with the size of the result.
+	 * 
+	 * @param query the input query string, with a ? for each parameter
+	 * @param handler receives each row in turn
+	 * @param params the values bound to the ? placeholders, in order
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int executeQueryAndStream (String query, RowHandler handler, Object... params) throws SQLException {
+		StatementEvent event = new StatementEvent();
+		PooledConnection conn = borrow(event);
+		long start = System.nanoTime();
+		long rows = -1;
+		try{
+			// a cursor only lives inside a transaction
+			conn.getConnection().setAutoCommit(false);
+			PreparedStatement stmt = prepare(conn, query, params);
+			stmt.setFetchSize(DEFAULT_FETCH_SIZE);
+			int rowCount = 0;
+			try{
+				//issues the query instruction
+				ResultSet rs = stmt.executeQuery ();
+				while (rs.next()){
+					handler.handleRow(rs);
+					++rowCount;
+				}//end while
+				rs.close ();
+			}finally{
+				// the statement is cached, so put it back to fetching everything
+				stmt.setFetchSize(0);
+			}
+			// each further batch of rows was a fetch, and the commit is one more round trip
+			Metrics.roundTrips(rowCount / DEFAULT_FETCH_SIZE + 1);
+			conn.getConnection().commit();
+			rows = rowCount;
+			return rowCount;
+		}catch(SQLException e){
+			conn.checkBroken(e);
+			throw e;
+		}finally{
+			finish(query, params, event, start, rows);
+			// release rolls back and restores autocommit if commit was not reached
+			this._pool.release(conn);
+		}
+	}
 	
 	/**
 	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
 	 * method issues the query to the DBMS and returns the results as
 	 * a list of records. Each record in turn is a list of attribute values
 	 * 
-	 * @param query the input query string
+	 * @param query the input query string, with a ? for each parameter
+	 * @param params the values bound to the ? placeholders, in order
 	 * @return the query result as a list of records
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException { 
-		//creates a statement object 
-		Statement stmt = this._connection.createStatement (); 
-		
-		//issues the query instruction 
-		ResultSet rs = stmt.executeQuery (query); 
-	 
-		/*
-		 * obtains the metadata object for the returned result set.  The metadata 
-		 * contains row and column info. 
-		*/ 
-		ResultSetMetaData rsmd = rs.getMetaData (); 
-		int numCol = rsmd.getColumnCount (); 
-		int rowCount = 0; 
-	 
-		//iterates through the result set and saves the data returned by the query. 
-		boolean outputHeader = false;
-		List<List<String>> result  = new ArrayList<List<String>>(); 
-		while (rs.next()){
-			List<String> record = new ArrayList<String>(); 
-			for (int i=1; i<=numCol; ++i) 
-				record.add(rs.getString (i)); 
-			result.add(record); 
-		}//end while 
-		stmt.close (); 
-		return result; 
+	public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException { 
+		StatementEvent event = new StatementEvent();
+		PooledConnection conn = borrow(event);
+		long start = System.nanoTime();
+		long rows = -1;
+		try{
+			//issues the query instruction 
+			ResultSet rs = prepare(conn, query, params).executeQuery (); 
+		 
+			/*
+			 * obtains the metadata object for the returned result set.  The metadata 
+			 * contains row and column info. 
+			*/ 
+			ResultSetMetaData rsmd = rs.getMetaData (); 
+			int numCol = rsmd.getColumnCount (); 
+		 
+			//iterates through the result set and saves the data returned by the query. 
+			List<List<String>> result  = new ArrayList<List<String>>(); 
+			while (rs.next()){
+				List<String> record = new ArrayList<String>(); 
+				for (int i=1; i<=numCol; ++i) 
+					record.add(rs.getString (i)); 
+				result.add(record); 
+			}//end while 
+			rs.close (); 
+			rows = result.size();
+			return result; 
+		}catch(SQLException e){
+			conn.checkBroken(e);
+			throw e;
+		}finally{
+			finish(query, params, event, start, rows);
+			this._pool.release(conn);
+		}
 	}//end executeQueryAndReturnResult
+
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
+	 * method issues the query to the DBMS and returns the results as a
+	 * ResultTable, which keeps INTEGER and DATE columns in primitive arrays
+	 * so they can be read back without parsing strings.
+	 * 
+	 * @param query the input query string, with a ? for each parameter
+	 * @param params the values bound to the ? placeholders, in order
+	 * @return the query result as a typed, column oriented table
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public ResultTable executeQueryAndReturnTable (String query, Object... params) throws SQLException { 
+		StatementEvent event = new StatementEvent();
+		PooledConnection conn = borrow(event);
+		long start = System.nanoTime();
+		long rows = -1;
+		try{
+			//issues the query instruction and reads every row
+			ResultSet rs = prepare(conn, query, params).executeQuery (); 
+			ResultTable result = ResultTable.read(rs);
+			rs.close (); 
+			rows = result.getRowCount();
+			return result; 
+		}catch(SQLException e){
+			conn.checkBroken(e);
+			throw e;
+		}finally{
+			finish(query, params, event, start, rows);
+			this._pool.release(conn);
+		}
+	}//end executeQueryAndReturnTable
 	
 	/**
 	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
 	 * method issues the query to the DBMS and returns the number of results
 	 * 
-	 * @param query the input query string
+	 * @param query the input query string, with a ? for each parameter
+	 * @param params the values bound to the ? placeholders, in order
 	 * @return the number of rows returned
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public int executeQuery (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
-
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
-
-		int rowCount = 0;
-
-		//iterates through the result set and count number of results.
-		if(rs.next()){
-			rowCount++;
-		}//end while
-		stmt.close ();
-		return rowCount;
+	public int executeQuery (String query, Object... params) throws SQLException {
+		StatementEvent event = new StatementEvent();
+		PooledConnection conn = borrow(event);
+		long start = System.nanoTime();
+		long rows = -1;
+		try{
+			//issues the query instruction
+			ResultSet rs = prepare(conn, query, params).executeQuery ();
+
+			int rowCount = 0;
+
+			//iterates through the result set and count number of results.
+			if(rs.next()){
+				rowCount++;
+			}//end while
+			rs.close ();
+			rows = rowCount;
+			return rowCount;
+		}catch(SQLException e){
+			conn.checkBroken(e);
+			throw e;
+		}finally{
+			finish(query, params, event, start, rows);
+			this._pool.release(conn);
+		}
 	}
 	
 	/**
 	 * Method to fetch the last value from sequence. This
 	 * method issues the query to the DBMS and returns the current 
-	 * value of sequence used for autogenerated keys
+	 * value of sequence used for autogenerated keys.  Note that currval
+	 * is per session, so with a pool it only sees a nextval issued on
+	 * whichever connection happens to be borrowed.
 	 * 
 	 * @param sequence name of the DB sequence
 	 * @return current value of a sequence
@@ -193,40 +555,163 @@ public class DBproject{
 	 */
 	
 	public int getCurrSeqVal(String sequence) throws SQLException {
-		Statement stmt = this._connection.createStatement ();
-		
-		ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-		if (rs.next()) return rs.getInt(1);
-		return -1;
+		StatementEvent event = new StatementEvent();
+		PooledConnection conn = borrow(event);
+		long start = System.nanoTime();
+		long rows = -1;
+		try{
+			ResultSet rs = prepare(conn, "Select currval(CAST(? AS regclass))", sequence).executeQuery ();
+			int value = -1;
+			if (rs.next()) value = rs.getInt(1);
+			rs.close ();
+			rows = 1;
+			return value;
+		}catch(SQLException e){
+			conn.checkBroken(e);
+			throw e;
+		}finally{
+			finish("Select currval(CAST(? AS regclass))", new Object[] { sequence }, event, start, rows);
+			this._pool.release(conn);
+		}
 	}
 
 	/**
-	 * Method to close the physical connection if it is open.
+	 * Method to run a query or a statement with a RETURNING clause on a
+	 * connection the caller has already borrowed, such as one statement of
+	 * its transaction, and return the rows it returned.  The statement is
+	 * recorded like those of the execute methods: its latency under its SQL
+	 * shape, the slow query log and a Flight Recorder event.  The caller
+	 * checks the connection for a failure and hands it back.
+	 * 
+	 * @param conn the borrowed connection
+	 * @param sql the input SQL string, with a ? for each parameter
+	 * @param params the values bound to the ? placeholders, in order
+	 * @return the returned rows as a typed, column oriented table
+	 * @throws java.sql.SQLException when the statement failed
 	 */
-	public void cleanup(){
+	ResultTable executeOn (PooledConnection conn, String sql, Object... params) throws SQLException {
+		StatementEvent event = new StatementEvent();
+		event.begin();
+		long start = System.nanoTime();
+		long rows = -1;
 		try{
-			if (this._connection != null){
-				this._connection.close ();
-			}//end if
-		}catch (SQLException e){
-	         // ignored.
-		}//end try
+			ResultSet rs = prepare(conn, sql, params).executeQuery ();
+			ResultTable result = ResultTable.read(rs);
+			rs.close ();
+			rows = result.getRowCount();
+			return result;
+		}finally{
+			finish(sql, params, event, start, rows);
+		}
+	}//end executeOn
+
+	/*
+	 * Borrows the connection for one of the execute methods, starting its
+	 * Flight Recorder event first so that the event covers the wait.
+	 */
+	private PooledConnection borrow(StatementEvent event) throws SQLException {
+		event.begin();
+		if (!event.isEnabled())
+			return this._pool.borrow();
+		long requested = System.nanoTime();
+		PooledConnection conn = this._pool.borrow();
+		event.connectionWait = System.nanoTime() - requested;
+		return conn;
+	}
+
+	/*
+	 * Records the time of a statement run by one of the execute methods, and
+	 * logs it when it was slow; rows is -1 when the statement failed.
+	 */
+	private void finish(String sql, Object[] params, StatementEvent event, long start, long rows) {
+		long nanos = System.nanoTime() - start;
+		event.end();
+		if (event.shouldCommit()) {
+			event.sql = sql;
+			event.rows = rows;
+			event.commit();
+		}
+		Metrics.statement(sql, nanos);
+		if (this._slowLog != null)
+			this._slowLog.check(sql, params, nanos, rows);
+	}
+
+	/**
+	 * Method to fetch the cached prepared statement for a SQL shape on the
+	 * given connection and bind its parameters.  Characters are sent as
+	 * one letter strings so that they match CHAR(1) domains such as _STATUS.
+	 * 
+	 * @param conn the borrowed connection
+	 * @param sql the SQL text with ? placeholders
+	 * @param params the values bound to the placeholders, in order
+	 * @return the bound statement, owned by the connection's cache
+	 * @throws java.sql.SQLException when the statement cannot be prepared or bound
+	 */
+	static PreparedStatement prepare(PooledConnection conn, String sql, Object... params) throws SQLException {
+		PreparedStatement stmt = conn.prepare(sql);
+		// every statement prepared here is executed once, one round trip
+		Metrics.roundTrips(1);
+		for (int i = 0; i < params.length; ++i) {
+			Object value = params[i];
+			if (value == null)
+				stmt.setNull(i + 1, Types.NULL);
+			else if (value instanceof Character)
+				stmt.setString(i + 1, value.toString());
+			else
+				stmt.setObject(i + 1, value);
+		}
+		return stmt;
+	}
+
+	/**
+	 * Method to finish any statements running in the background and write
+	 * any queued repairs, then close the connection pool and every idle
+	 * connection in it.
+	 */
+	public void cleanup(){
+		synchronized (this) {
+			if (this._async != null)
+				this._async.close();
+			if (this._repairs != null)
+				this._repairs.close();
+		}
+		if (this._slowLog != null){
+			// the plans still being captured need the pool
+			this._slowLog.close();
+		}//end if
+		if (this._pool != null){
+			this._pool.close ();
+		}//end if
 	}//end cleanup
 
 	/**
 	 * The main execution method
 	 * 
-	 * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
+	 * @param args the command line arguments this inclues the <dbname> <port> <user>,
+	 *        optionally followed by --load <data dir> to reload every table from
+	 *        the CSV files in that directory, or by --batch <file> to run the
+	 *        commands in that file (- for standard input) with BatchRunner,
+	 *        instead of showing the menu
 	 */
 	public static void main (String[] args) {
-		if (args.length != 3) {
+		boolean load = args.length == 5 && args[3].equals("--load");
+		boolean batch = args.length == 5 && args[3].equals("--batch");
+		if (args.length != 3 && !load && !batch) {
 			System.err.println (
 				"Usage: " + "java [-classpath <classpath>] " + DBproject.class.getName () +
-		            " <dbname> <port> <user>");
+		            " <dbname> <port> <user> [--load <data dir> | --batch <file|->]");
 			return;
 		}//end if
 		
 		DBproject esql = null;
+		// the batch results own standard output, so the banners go to standard
+		// error; buffered, so a large script is not slowed down by a write per result
+		PrintStream results = null;
+		if(batch){
+			results = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), false);
+			System.setOut(System.err);
+		}
+		boolean failed = false;
 		
 		try{
 			System.out.println("(1)");
@@ -246,6 +731,20 @@ public class DBproject{
 			String user = args[2];
 			
 			esql = new DBproject (dbname, dbport, user, "");
+
+			if(load){
+				new DataLoader(esql, new File(args[4])).load(LOADER_THREADS);
+				return;
+			}
+			if(batch){
+				BufferedReader script = args[4].equals("-") ? in : new BufferedReader(new FileReader(args[4]));
+				try{
+					failed = new BatchRunner(esql, results).run(script) > 0;
+				}finally{
+					script.close();
+				}
+				return;
+			}
 			
 			boolean keepon = true;
 			while(keepon){
@@ -260,9 +759,19 @@ public class DBproject{
 				System.out.println("7. List total number of repairs per plane in descending order");
 				System.out.println("8. List total number of repairs per year in ascending order");
 				System.out.println("9. Find total number of passengers with a given status");
-				System.out.println("10. < EXIT");
+				System.out.println("10. Cancel a reservation");
+				System.out.println("11. List available seats for a range of dates or several flights");
+				System.out.println("12. List passenger counts by status for all flights");
+				System.out.println("13. Add Repair");
+				System.out.println("14. Dashboard: seats, repairs and passengers at once");
+				System.out.println("15. Show query and operation metrics");
+				// EXIT stays 0 however many options are added above it
+				System.out.println("0. < EXIT");
 				
-				switch (readChoice()){
+				int choice = readChoice();
+				Metrics.Operation operation = choice > 0 && choice < MENU_OPERATIONS.length
+					? Metrics.begin(MENU_OPERATIONS[choice]) : null;
+				switch (choice){
 					case 1: AddPlane(esql); break;
 					case 2: AddPilot(esql); break;
 					case 3: AddFlight(esql); break;
@@ -272,12 +781,29 @@ public class DBproject{
 					case 7: ListsTotalNumberOfRepairsPerPlane(esql); break;
 					case 8: ListTotalNumberOfRepairsPerYear(esql); break;
 					case 9: FindPassengersCountWithStatus(esql); break;
-					case 10: keepon = false; break;
+					case 10: CancelReservation(esql); break;
+					case 11: ListAvailableSeatsInBulk(esql); break;
+					case 12: ListPassengerCountsForAllFlights(esql); break;
+					case 13: AddRepair(esql); break;
+					case 14: ShowDashboard(esql); break;
+					case 15: ShowMetrics(esql); break;
+					case 0: keepon = false; break;
 				}
+				Metrics.end(operation);
 			}
 		}catch(Exception e){
 			System.err.println (e.getMessage ());
+			failed = true;
 		}finally{
+			// -Ddbproject.metrics.file=<path> keeps the metrics of the whole run
+			String metricsFile = System.getProperty("dbproject.metrics.file");
+			if(metricsFile != null){
+				try{
+					Metrics.dump(metricsFile);
+				}catch(IOException e){
+					System.err.println (e.getMessage());
+				}
+			}
 			try{
 				if(esql != null) {
 					System.out.print("Disconnecting from database...");
@@ -287,9 +813,21 @@ public class DBproject{
 			}catch(Exception e){
 				// ignored.
 			}
+			// a nightly job running a script learns that some commands failed
+			if(batch && failed)
+				System.exit(1);
 		}
 	}
 
+	// reads a line and returns its first character, or a space for an empty line
+	public static char readChar() throws IOException {
+		String line = in.readLine();
+		if (line == null)
+			throw new IOException("No more input");
+		line = line.trim();
+		return line.isEmpty() ? ' ' : line.charAt(0);
+	}
+
 	public static int readChoice() {
 		int input;
 		// returns only if a correct value is given.
@@ -306,78 +844,41 @@ public class DBproject{
 		return input;
 	}//end readChoice
 
-	public static void AddPlane(DBproject esql) {//1
+	// Adds a plane and returns its id, or -1 when it could not be added.
+	public static int AddPlane(DBproject esql) {//1
+		int id = -1;
         try{
 		    System.out.print("\tPlease Enter Aircraft Maker: ");
 		    String maker = in.readLine();
 		    System.out.print("\tPlease Enter Aircraft Model: ");
 		    String model = in.readLine();
 		    System.out.print("\tPlease Enter Aircraft Age: ");
-		    String age = in.readLine();
+		    int age = Integer.parseInt(in.readLine());
 		    System.out.print("\tPlease Enter Aircraft Seats: ");
-		    String seats = in.readLine();
+		    int seats = Integer.parseInt(in.readLine());
 		    System.out.print("\n");
 
-		    String find_max="SELECT MAX(P.id) from Plane P;";
-		    int test=0;
-		    List<List<String>> max_count=esql.executeQueryAndReturnResult(find_max);
-		    String Info="SELECT * FROM Plane P Where P.id= ";
-		    for(List<String> row : max_count)
-		    {
-		     for(String s: row)
-		     {
-		       //System.out.println(s + "\t");
-		       test = Integer.parseInt(s);
-			
-		     }
-		     //System.out.println("\n");
-		    }
-		    if(test==0){
-		    test++;
-		    Info += "\'"+test+"\';";
-		    String update_plane="INSERT INTO Plane (id, make, model, age, seats) VALUES "
-		    +" ("+test+", \'"+maker+"\',\'"+model+"\',\'"+age+"\',\'"+seats+"\');";
+		    // Take the next id from the block this program holds, no query needed
+		    int test = esql.nextId(KeyAllocator.PLANE);
 		    System.out.print("\tPlane Information entered: "+"\n");
-		    esql.executeUpdate(update_plane);
-		    esql.executeQueryAndPrintResult(Info);	
-		    }
-		    else{
-		    test++;
-		    Info += "\'"+test+"\';";
-		    String update_plane="INSERT INTO Plane (id, make, model, age, seats) VALUES "
-		    +" ("+test+", \'"+maker+"\',\'"+model+"\',\'"+age+"\',\'"+seats+"\');";
-		    System.out.print("\tPlane Information entered: "+"\n");	
-		    esql.executeUpdate(update_plane);
-		    esql.executeQueryAndPrintResult(Info);	 
-		    }
+		    esql.executeUpdateAndPrintResult(INSERT_PLANE, test, maker, model, age, seats);
+		    id = test;
+        }
+        catch(NumberFormatException e){
+            System.out.print("You must enter a number.\n");
+            System.err.println (e.getMessage());
         }
         catch(Exception e){
     		System.err.println (e.getMessage());
         }	
-
+        return id;
 	}
 
-	public static void AddPilot(DBproject esql) {//2
-
+	// Adds a pilot and returns its id, or -1 when it could not be added.
+	public static int AddPilot(DBproject esql) {//2
+		int id = -1;
         try{
 
-            // Get the maximum id in the pilot table.
-            String find_max = "SELECT MAX(P.ID) AS max_value FROM Pilot P;";
-            List<List<String>> rs = esql.executeQueryAndReturnResult(find_max);
-
-            int rowCount = rs.size();
-            int maxRecord = 0;
-            int i = 0;
-            int j = 0;
-            int numCol = rs.get(0).size();
-
-            // Get the max value for the return query
-            for(List<String> row : rs){
-                for(String s: row){
-                    maxRecord = Integer.parseInt(s);
-                }
-            }
-
             // Get user input for the pilot full name and nationality
             String fname;
             String nationality;
@@ -394,27 +895,12 @@ public class DBproject{
             }
 
             
-            // Insert into database. If there are no records in table insert new pilot with 
-            // id = 0. Otherwise just increment the max id returned by max id query 
-            // by 1 and insert pilot table.
-            String insert_pilot = "INSERT INTO Pilot(id, fullname, nationality) "; 
-            String print_record = "SELECT * FROM Pilot P WHERE P.id = ";
-            if(rowCount == 0){
-                insert_pilot += "VALUES(0,\'" + fname + "\',\'" + nationality + "\');";
-                print_record += maxRecord + ";";
-                esql.executeUpdate(insert_pilot);
-                System.out.println("Added pilot " + fname + " from " + nationality + " with id: " + maxRecord + ".\n");
-                int newRec = esql.executeQueryAndPrintResult(print_record);
-            }
-            else{
-                maxRecord++;
-                insert_pilot += "VALUES(" + maxRecord + ",\'" + fname + "\',\'" + nationality + "\');";
-                print_record += maxRecord + ";";
-                esql.executeUpdate(insert_pilot);
-                System.out.println("Added pilot " + fname + " from " + nationality + " with id: " + maxRecord + ".\n");
-                int newRec = esql.executeQueryAndPrintResult(print_record);
-
-            }
+            // Insert into database with the next id from the block this program holds.
+            // The inserted record is printed from the RETURNING clause.
+            int maxRecord = esql.nextId(KeyAllocator.PILOT);
+            System.out.println("Added pilot " + fname + " from " + nationality + " with id: " + maxRecord + ".\n");
+            int newRec = esql.executeUpdateAndPrintResult(INSERT_PILOT, maxRecord, fname, nationality);
+            id = maxRecord;
         }
         catch(InputMismatchException e){
             System.out.print("The length of your input exceeds the allowed length.\n");
@@ -423,10 +909,13 @@ public class DBproject{
         catch(Exception e){
             System.err.println(e.getMessage());
         }
+        return id;
 	}
 
-	public static void AddFlight(DBproject esql) {//3
+	// Adds a flight and returns its number, or -1 when it could not be added.
+	public static int AddFlight(DBproject esql) {//3
 		// Given a pilot, plane and flight, adds a flight in the DB
+		int created = -1;
 	    try{
 
             int pilotID;
@@ -437,78 +926,55 @@ public class DBproject{
             System.out.print("\nEnter plane id: ");
             planeID = Integer.parseInt(in.readLine());;
 
-            // Get the max value of fiid primary key.
-            String find_max_fiid = "SELECT MAX(F.fiid) AS max_value FROM FlightInfo F;";
-            List<List<String>> flightInfo_rs = esql.executeQueryAndReturnResult(find_max_fiid);
-            int fiid = 0;
-
-            // If FlightInfo table is not empty create a new id with the value of the max id plus one.
-            if(flightInfo_rs.size() > 0){
-                for(List<String> row : flightInfo_rs){
-                    for(String s: row){
-                        fiid = Integer.parseInt(s);
-                    }
-                }
-                fiid++; // Use next value in sequence
-            }
-
             // Used to check if the plane id or pilot id exist.
-            String plane_query = "SELECT * FROM Plane WHERE id = " + planeID;
-            String pilot_query = "SELECT * FROM Pilot WHERE id = " + pilotID;
-            List<List<String>> plane_rs = esql.executeQueryAndReturnResult(plane_query);
-            List<List<String>> pilot_rs = esql.executeQueryAndReturnResult(pilot_query);
-
-            // Used to add a record with fiid, fligh_id, pilot_id, and plane_id into FlightInfo table
-            String insert_flightInfo_query = "INSERT INTO FlightInfo(fiid, flight_id, pilot_id, plane_id) VALUES(";
+            String plane_query = "SELECT * FROM Plane WHERE id = ?";
+            String pilot_query = "SELECT * FROM Pilot WHERE id = ?";
+            int plane_rows = esql.executeQuery(plane_query, planeID);
+            int pilot_rows = esql.executeQuery(pilot_query, pilotID);
 
             // If both the pilot id and plane id exists, create a new flight record in the flight table, 
             // then create a new record in the FlightInfo table. Otherwise, ask user if they want to create
             // a new plane and a new pilot, then create new flight record and finally insert a new record into FlightInfo.
           
-            if(plane_rs.size() > 0 && pilot_rs.size() > 0){
+            if(plane_rows > 0 && pilot_rows > 0){
                 int flightID = InsertFlight(esql);
+                if(flightID < 0){
+                    return created;
+                }
                 System.out.print("\nFlight number created: " + flightID + "\n");
-                insert_flightInfo_query += fiid + ", "  + flightID + ", " + pilotID + ", " + planeID + ");";
-                esql.executeUpdate(insert_flightInfo_query);
-                // Print inserted record
-                String fiid_query = "SELECT * FROM FlightInfo F WHERE F.fiid = " + fiid + ";";
-                int rowNum = esql.executeQueryAndPrintResult(fiid_query);                
+                int fiid = esql.nextId(KeyAllocator.FLIGHT_INFO);
+                // Insert and print inserted record
+                int rowNum = esql.executeUpdateAndPrintResult(INSERT_FLIGHT_INFO, fiid, flightID, pilotID, planeID);
+                esql.getAvailability().invalidate(flightID);
+                created = flightID;
             }
             else{
                 System.out.print("\nInvalid pilot id and plane id combination.\n");
 
-                String max_plane = "SELECT MAX(P.id) AS max_value FROM Plane P;";
-                String max_pilot = "SELECT MAX(P.id) AS max_value FROM Pilot P;";
-
                 // Find if either plane or pilot does not exist, ask user if they 
                 // want to add it.
-                if(plane_rs.size() == 0 && pilot_rs.size() > 0){
+                if(plane_rows == 0 && pilot_rows > 0){
                     System.out.print("\nPilot ID exists, but plane ID does not exist." 
                                       + "\nDo you want to add a new plane?\n");
-                    Scanner sc = new Scanner(System.in);
-                    // String input = sc.nextLine();
-                    char option = sc.next().charAt(0);
+                    // read from the same reader as every other prompt, so piped input is not lost
+                    char option = readChar();
 
                     if(option == 'Y' || option == 'y'){
-                        AddPlane(esql);
-                        // Get the plane ID we just added
-                        List<List<String>> max_plane_rs = esql.executeQueryAndReturnResult(max_plane);
-                        for(List<String> row : max_plane_rs){
-                             for(String s: row){
-                                 planeID = Integer.parseInt(s);
-                             }
-                         }
+                        // Add the plane and keep the plane ID we just added
+                        planeID = AddPlane(esql);
 
                          // Get the flight details and insert new records in Flight and FlightInfo tables
-                         int flightID = InsertFlight(esql);
+                         int flightID = (planeID < 0 || pilotID < 0) ? -1 : InsertFlight(esql);
+                         if(flightID < 0){
+                             return created;
+                         }
 
                          System.out.print("\nFlight number created: " + flightID + "\n");
-                         insert_flightInfo_query += fiid + ", "  + flightID + ", " + pilotID + ", " + planeID + ");";
-                         esql.executeUpdate(insert_flightInfo_query);
-
-                         // Print inserted record
-                         String fiid_query = "SELECT * FROM FlightInfo F WHERE F.fiid = " + fiid + ";";
-                         int rowNum = esql.executeQueryAndPrintResult(fiid_query);                                                               
+                         int fiid = esql.nextId(KeyAllocator.FLIGHT_INFO);
+                         // Insert and print inserted record
+                         int rowNum = esql.executeUpdateAndPrintResult(INSERT_FLIGHT_INFO, fiid, flightID, pilotID, planeID);
+                         esql.getAvailability().invalidate(flightID);
+                         created = flightID;
                     }
 
                     else{
@@ -516,33 +982,27 @@ public class DBproject{
                     }            
                 }
 
-                else if(pilot_rs.size()==0 && plane_rs.size() > 0){
+                else if(pilot_rows==0 && plane_rows > 0){
                     System.out.print("\nPlane ID exists, but pilot ID does not exist." 
                                       + "\nDo you want to add a new pilot?\n");
-                    Scanner sc = new Scanner(System.in);
-                    // String input = sc.nextLine();
-                    char option = sc.next().charAt(0);
+                    char option = readChar();
 
                     if(option == 'Y' || option == 'y'){
-                        AddPilot(esql);
-                        // Get the pilot ID we just added
-                        List<List<String>> max_pilot_rs = esql.executeQueryAndReturnResult(max_pilot);
-                        for(List<String> row : max_pilot_rs){
-                             for(String s: row){
-                                 pilotID = Integer.parseInt(s);
-                             }
-                         }
+                        // Add the pilot and keep the pilot ID we just added
+                        pilotID = AddPilot(esql);
 
                          // Get the flight details and insert new records in Flight and FlightInfo tables
-                         int flightID = InsertFlight(esql);
+                         int flightID = (planeID < 0 || pilotID < 0) ? -1 : InsertFlight(esql);
+                         if(flightID < 0){
+                             return created;
+                         }
 
                          System.out.print("\nFlight number created: " + flightID + "\n");
-                         insert_flightInfo_query += fiid + ", "  + flightID + ", " + pilotID + ", " + planeID + ");";
-                         esql.executeUpdate(insert_flightInfo_query);
-
-                         // Print inserted record
-                         String fiid_query = "SELECT * FROM FlightInfo F WHERE F.fiid = " + fiid + ";";
-                         int rowNum = esql.executeQueryAndPrintResult(fiid_query);   
+                         int fiid = esql.nextId(KeyAllocator.FLIGHT_INFO);
+                         // Insert and print inserted record
+                         int rowNum = esql.executeUpdateAndPrintResult(INSERT_FLIGHT_INFO, fiid, flightID, pilotID, planeID);
+                         esql.getAvailability().invalidate(flightID);
+                         created = flightID;
                     }
                     
                     else{
@@ -553,41 +1013,27 @@ public class DBproject{
                 else{
                     System.out.print("\nNeither the plane ID nor the pilot ID exist." 
                                       + "\nDo you want to add a new plane and a new pilot (y/n)?\n");
-                    Scanner sc = new Scanner(System.in);
-                    // String input = sc.nextLine();
-                    char option = sc.next().charAt(0);
+                    char option = readChar();
 
 
 
                     if(option == 'Y' || option == 'y'){
-                        // Add the plane and get the plane ID we just added
-                        AddPlane(esql);
-                        List<List<String>> max_plane_rs = esql.executeQueryAndReturnResult(max_plane);
-                        for(List<String> row : max_plane_rs){
-                             for(String s: row){
-                                 planeID = Integer.parseInt(s);
-                             }
-                         }
-
-                        // Add the pilot and get the pilot ID we just added
-                        AddPilot(esql);
-                        List<List<String>> max_pilot_rs = esql.executeQueryAndReturnResult(max_pilot);
-                        for(List<String> row : max_pilot_rs){
-                             for(String s: row){
-                                 pilotID = Integer.parseInt(s);
-                             }
-                         }
+                        // Add the plane and the pilot and keep the IDs we just added
+                        planeID = AddPlane(esql);
+                        pilotID = planeID < 0 ? -1 : AddPilot(esql);
 
                          // Get the flight details and insert new records in Flight and FlightInfo tables
-                         int flightID = InsertFlight(esql);
+                         int flightID = (planeID < 0 || pilotID < 0) ? -1 : InsertFlight(esql);
+                         if(flightID < 0){
+                             return created;
+                         }
 
                          System.out.print("\nFlight number created: " + flightID + "\n");
-                         insert_flightInfo_query += fiid + ", "  + flightID + ", " + pilotID + ", " + planeID + ");";
-                         esql.executeUpdate(insert_flightInfo_query);
-
-                         // Print inserted record
-                         String fiid_query = "SELECT * FROM FlightInfo F WHERE F.fiid = " + fiid + ";";
-                         int rowNum = esql.executeQueryAndPrintResult(fiid_query);   
+                         int fiid = esql.nextId(KeyAllocator.FLIGHT_INFO);
+                         // Insert and print inserted record
+                         int rowNum = esql.executeUpdateAndPrintResult(INSERT_FLIGHT_INFO, fiid, flightID, pilotID, planeID);
+                         esql.getAvailability().invalidate(flightID);
+                         created = flightID;
                     }
                     
                     else{
@@ -604,28 +1050,12 @@ public class DBproject{
 		    System.err.println (e.getMessage());
 	       }
 
+        return created;
 	}
 
 	public static void AddTechnician(DBproject esql) {//4        
 
         try{
-            // Get the maximum id in the technician table.
-            String find_max = "SELECT MAX(T.ID) AS max_value FROM Technician T;";
-            List<List<String>> rs = esql.executeQueryAndReturnResult(find_max);
-
-            int rowCount = rs.size();
-            int maxRecord = 0;
-            int i = 0;
-            int j = 0;
-            int numCol = rs.get(0).size();
-
-            // Get the max value for the return query
-            for(List<String> row : rs){
-                for(String s: row){
-                    maxRecord = Integer.parseInt(s);
-                }
-            }
-
             // Get user input for the technician full name
             String fname;
             System.out.println("\nEnter the technician's full name:\t");
@@ -636,26 +1066,11 @@ public class DBproject{
             }
             
             
-            // Insert into database. If there are no records in table insert new technician with 
-            // id = 0. Otherwise just increment the max id returned by query 
-            // by 1 and insert technician.
-            String insert_technician = "INSERT INTO Technician(id, full_name) "; 
-            String print_record = "SELECT * FROM Technician T WHERE T.id = ";
-            if(rowCount == 0){
-                insert_technician += "VALUES(0,\'" + fname + "\');";
-                print_record += rowCount + ";";
-                esql.executeUpdate(insert_technician);
-                System.out.println("Added technician " + fname + " with id: " + maxRecord + "\n");
-                int newRec = esql.executeQueryAndPrintResult(print_record);            
-            }
-            else{
-                maxRecord++;
-                insert_technician += " VALUES("+ maxRecord + ", \'" + fname + "\');";          
-                print_record += maxRecord + ";";
-                esql.executeUpdate(insert_technician);
-                System.out.println("\nAdded technician " + fname + " with id: " + maxRecord + ".\n");
-                int newRec = esql.executeQueryAndPrintResult(print_record);
-            }
+            // Insert into database with the next id from the block this program holds.
+            // The inserted record is printed from the RETURNING clause.
+            int maxRecord = esql.nextId(KeyAllocator.TECHNICIAN);
+            System.out.println("\nAdded technician " + fname + " with id: " + maxRecord + ".\n");
+            int newRec = esql.executeUpdateAndPrintResult(INSERT_TECHNICIAN, maxRecord, fname);
         }
         catch(InputMismatchException e){
             System.out.print("The length of your input exceeds the allowed length.\n");
@@ -672,86 +1087,71 @@ public class DBproject{
 	try{ 
 			System.out.print("\tPlease Enter Customer Information: \n");	
 			System.out.print("\tPlease Enter Passenger ID: ");
-			String input1 = in.readLine();
+			int input1 = Integer.parseInt(in.readLine());
 			System.out.print("\tPlease Enter Flight Number: ");
-			String input2 = in.readLine();
-			String find_res="SELECT R.rnum from Reservation R, Customer C, Flight F WHERE C.id=R.cid AND F.fnum=R.fid AND C.id=\'"+input1+"\' AND F.fnum=\'"+input2+"\';";
-			String find_stat="SELECT R.status from Reservation R, Customer C, Flight F WHERE C.id=R.cid AND F.fnum=R.fid AND C.id=\'"+input1+"\' AND F.fnum=\'"+input2+"\';";
-			int test=0;
-			List<List<String>> find_rnum=esql.executeQueryAndReturnResult(find_res);
-
-			if(find_rnum.size()==0)
+			int input2 = Integer.parseInt(in.readLine());
+			// reads the current status and whether the flight and the customer exist in one query
+			String find_res="SELECT (SELECT R.status FROM Reservation R WHERE R.cid=? AND R.fid=? LIMIT 1),"
+					+" (SELECT COUNT(*) FROM Flight F WHERE F.fnum=?),"
+					+" (SELECT COUNT(*) FROM Customer C WHERE C.id=?);";
+			ResultTable found=esql.executeQueryAndReturnTable(find_res, input1, input2, input2, input1);
+			boolean customer_exists=found.getLong(0, 2)>0;
+
+			if(!found.isNull(0, 0))
 			{
-
-				String find_flight="SELECT F.fnum FROM Flight F WHERE fnum=\'"+input2+"\';";
-				List<List<String>>find_fnum=esql.executeQueryAndReturnResult(find_flight);
-				if(find_fnum.size()==0)
+				System.out.print("\tCurrent status: "+found.getString(0, 0)+"\n");
+			}
+			else if(found.getLong(0, 1)==0)
+			{
+				System.out.print("\tFlight Does Not Exist Please Enter Info: \n");
+				input2=AddFlight(esql);
+				if(input2<0)
 				{
-					System.out.print("\tFlight Does Not Exist Please Enter Info: \n");
-					AddFlight(esql);
-
+					return;
 				}
+			}
 
-				
-				String find_pass="SELECT C.id FROM Customer C WHERE C.id=\'"+input1+"\';";
-				//checking to see if the passenger exists if not then add the passenger to the passenger table
-				List<List<String>> find_passId=esql.executeQueryAndReturnResult(find_pass);
-				if(find_passId.size()==0)
-				{
-					System.out.print("\tCustomer Does Not Exist Please Enter Info: \n");
-					String fname,lname,gtype,dob,address,phone,zipcode;
-					System.out.print("\tCustomer First Name: ");
-					fname=in.readLine();
-					System.out.print("\tCustomer Last Name: ");
-					lname=in.readLine();
-					System.out.print("\tCustomer Gender: ");
-					gtype=in.readLine();
-					System.out.print("\tCustomer DOB: ");
-					dob=in.readLine();
-					System.out.print("\tCustomer Address: ");
-					address=in.readLine();
-					System.out.print("\tCustomer Phone Number: ");
-					phone=in.readLine();
-					System.out.print("\tCustomer Zip: ");
-					zipcode=in.readLine();
-					
-					String insert_cus="INSERT INTO Customer (id, fname, lname, gtype, dob, address, phone, zipcode)"  
-							+" VALUES(\'"+input1+"\',\'"+fname+"\', \'"+lname+"\',\'"+gtype+"\',\'"+dob+"\', \'"+address+"\', \'"+phone+"\', \'"+zipcode+"\');"; 
-					esql.executeUpdate(insert_cus);
-					String find_max="SELECT Max(R.rnum) from Reservation R;";
-					List<List<String>> find_rnumMax=esql.executeQueryAndReturnResult(find_max);
-					for(List<String> row : find_rnumMax)
-					{
-					 for(String s: row)
-					 {
-					   test = Integer.parseInt(s);
-					 }
-					}
-					test++;			
-					System.out.print("\tPlease Enter New Status of W,R,C: ");
-					Scanner sc = new Scanner(System.in);
-					char Val = sc.next().charAt(0);
-					String insert_res="INSERT INTO Reservation (rnum, cid, fid, status) VALUES("+test+",\'"+input1+"\',\'"+input2+"\', \'"+Val+"\');";  
-					String query="SELECT R.status FROM Reservation R, Customer C, Flight F WHERE C.id=R.cid AND F.fnum=R.fid AND C.id=\'"+input1+"\' AND F.fnum=\'"+input2+"\';";
-					esql.executeUpdate(insert_res);
-					System.out.print("\tStatus has been updated to: \n ");
-					esql.executeQueryAndPrintResult(query);
-				}							
+			//the passenger is added together with the reservation if it does not exist
+			String fname=null,lname=null,gtype=null,dob=null,address=null,phone=null,zipcode=null;
+			if(!customer_exists)
+			{
+				System.out.print("\tCustomer Does Not Exist Please Enter Info: \n");
+				System.out.print("\tCustomer First Name: ");
+				fname=in.readLine();
+				System.out.print("\tCustomer Last Name: ");
+				lname=in.readLine();
+				System.out.print("\tCustomer Gender: ");
+				gtype=in.readLine();
+				System.out.print("\tCustomer DOB: ");
+				dob=in.readLine();
+				System.out.print("\tCustomer Address: ");
+				address=in.readLine();
+				System.out.print("\tCustomer Phone Number: ");
+				phone=in.readLine();
+				System.out.print("\tCustomer Zip: ");
+				zipcode=in.readLine();
 			}
+
+			System.out.print("\tPlease Enter New Status of W,R,C: ");
+			char Val = Character.toUpperCase(readChar());
+
+			// books in one transaction and one round trip; nothing is written if any part fails
+			ResultTable reservation;
+			if(customer_exists)
+				reservation=esql.getBooking().book(input1, input2, Val);
 			else
-			{	
-				List<List<String>> current_status=esql.executeQueryAndReturnResult(find_stat);
-				System.out.print("\tCurrent status: "+current_status+"\n");
-				System.out.print("\tPlease Enter New Status of W,R,C: ");
-				Scanner sc = new Scanner(System.in);
-				char Val = sc.next().charAt(0);
-				String update_res="UPDATE Reservation SET status= \'"+Val+"\' WHERE cid= \'"+input1+"\' AND fid= \'"+input2+"\'";
-				String query="SELECT R.status FROM Reservation R, Customer C, Flight F WHERE C.id=R.cid AND F.fnum=R.fid AND C.id=\'"+input1+"\' AND F.fnum=\'"+input2+"\';";
-				esql.executeUpdate(update_res);
-				System.out.print("\tStatus has been updated to: \n ");
-				esql.executeQueryAndPrintResult(query);
-			}
+				// Throws an IllegalArgumentException unless the date is yyyy-mm-dd
+				reservation=esql.getBooking().book(input1, input2, Val,
+						fname, lname, gtype, java.sql.Date.valueOf(dob), address, phone, zipcode);
+			System.out.print("\tReservation "+reservation.getInt(0, 0)+" status has been updated to: "
+					+reservation.getString(0, 3)+"\n");
 	}	
+	catch(SQLException e)
+	{
+		if(BookingEngine.isSoldOut(e))
+			System.out.print("\tThe flight is sold out, try booking with status W.\n");
+		System.err.println (e.getMessage());
+	}
 	catch(Exception e)
 	{
 		System.err.println (e.getMessage());
@@ -759,38 +1159,95 @@ public class DBproject{
 
 }
 
+	public static void CancelReservation(DBproject esql) {//10
+		// Given a reservation number, delete the reservation and free its seat
+		try{
+			System.out.print("\tPlease Enter Reservation Number: ");
+			int rnum = Integer.parseInt(in.readLine());
+			ResultTable cancelled = esql.getBooking().cancel(rnum);
+			if(cancelled.getRowCount() == 0)
+				System.out.print("\tReservation " + rnum + " does not exist.\n");
+			else
+				System.out.print("\tCancelled reservation " + rnum + " of customer " + cancelled.getInt(0, 1)
+					+ " on flight " + cancelled.getInt(0, 2) + ".\n");
+		}
+		catch(NumberFormatException e){
+			System.out.print("You must enter a number.\n");
+			System.err.println (e.getMessage());
+		}
+		catch(Exception e){
+			System.err.println (e.getMessage());
+		}
+	}
+
 	public static void ListNumberOfAvailableSeats(DBproject esql) {//6
 		// For flight number and date, find the number of availalbe seats (i.e. total plane capacity minus booked seats )
     	try{
-            String query= "SELECT P.seats - F.num_sold AS Available_Seats FROM Plane P, FlightInfo FI, Flight F WHERE P.ID = FI.plane_id AND FI.flight_id=F.fnum AND F.fnum= ";
-		    String query2 = " AND F.actual_departure_date= ";
-
             // Get user input    		
             System.out.print("\tPlease Enter Flight Number:  ");
-	    	String input = in.readLine();
-	    	query += "\'"+input+"\'";
+	    	int input = Integer.parseInt(in.readLine());
 	    	System.out.print("\tPlease Enter Flight Date: ");
-	    	String input2 = in.readLine();
-
-	    	query2 += "\'"+input2+"\'";
-	    	query += query2;
+	    	// Throws an IllegalArgumentException unless the date is yyyy-mm-dd
+	    	java.sql.Date input2 = java.sql.Date.valueOf(in.readLine());
+
+	    	// Answered from memory unless the flight was booked or looked up long ago
+	    	int[] seats = esql.getAvailability().getAvailableSeats(input, input2);
+	    	if(seats.length == 0){
+	    		System.out.print("\tNo flight number " + input + " departs on " + input2 + "\n");
+	    		return;
+	    	}
 	    	System.out.print("\tTotal Remaining Seats for Flight Number  "+ input + "\n");
-	    	esql.executeQueryAndPrintResult(query);
+	    	for(int available : seats)
+	    		System.out.print(available + "\n");
 		}
         catch(Exception e){
             System.err.println (e.getMessage());
 	   }	
 	}
 
+	public static void ListAvailableSeatsInBulk(DBproject esql) {//11
+		// For every flight in a departure date range, or in a list of flight numbers,
+		// list the available seats with one query instead of one per flight
+		try{
+			System.out.print("\t1. By departure date range\n\t2. By list of flight numbers\n");
+			int choice = readChoice();
+			int rowCount;
+			if(choice == 1){
+				// Throws an IllegalArgumentException unless the dates are yyyy-mm-dd
+				System.out.print("\tPlease Enter First Departure Date: ");
+				java.sql.Date from = java.sql.Date.valueOf(in.readLine());
+				System.out.print("\tPlease Enter Last Departure Date: ");
+				java.sql.Date to = java.sql.Date.valueOf(in.readLine());
+				rowCount = esql.getAvailability().writeAvailableSeats(from, to, CONSOLE.get());
+			}
+			else if(choice == 2){
+				System.out.print("\tPlease Enter Flight Numbers, separated by commas: ");
+				String[] fields = in.readLine().split(",");
+				int[] fnums = new int[fields.length];
+				for(int i = 0; i < fields.length; ++i)
+					fnums[i] = Integer.parseInt(fields[i].trim());
+				rowCount = esql.getAvailability().writeAvailableSeats(fnums, CONSOLE.get());
+			}
+			else{
+				System.out.print("\tUnknown choice.\n");
+				return;
+			}
+			System.out.print("\t" + rowCount + " row(s) listed.\n");
+		}
+		catch(NumberFormatException e){
+			System.out.print("You must enter a number.\n");
+			System.err.println (e.getMessage());
+		}
+		catch(Exception e){
+			System.err.println (e.getMessage());
+		}
+	}
+
 	public static void ListsTotalNumberOfRepairsPerPlane(DBproject esql) {//7
 		// Count number of repairs per planes and list them in descending order
         try{
-            String query = "SELECT P.id, P.make, P.model, P.age, P.seats, count(*) AS totalRepairs " 
-                            + "FROM Repairs R, Plane P "
-                            + "WHERE R.plane_id = P.id "
-                            + "GROUP BY P.id "
-                            + "ORDER BY totalRepairs DESC;";
-            int rowCount = esql.executeQueryAndPrintResult(query);
+            // Read from the totals the repairs_rollup trigger keeps per plane
+            int rowCount = esql.executeQueryAndPrintResult(RepairRollups.PER_PLANE);
             System.out.println("\nTotal row(s): " + rowCount + "\n");
             } 
         catch(Exception e){
@@ -801,11 +1258,8 @@ public class DBproject{
 	public static void ListTotalNumberOfRepairsPerYear(DBproject esql) {//8
 		// Count repairs per year and list them in ascending order
         try{
-            String query = "SELECT EXTRACT(YEAR FROM R.repair_date) AS repair_year, count(*) AS totalRepairs "
-                         + "FROM Repairs R "
-                         + "GROUP BY repair_year "
-                         + "ORDER BY repair_year ASC;";
-            int rowCount = esql.executeQueryAndPrintResult(query);
+            // Read from the totals the repairs_rollup trigger keeps per year
+            int rowCount = esql.executeQueryAndPrintResult(RepairRollups.PER_YEAR);
             System.out.println("\ntotal row(s): " + rowCount + "\n");
             } 
         catch(Exception e){
@@ -816,30 +1270,107 @@ public class DBproject{
 	public static void FindPassengersCountWithStatus(DBproject esql) {//9
 		// Find how many passengers there are with a status (i.e. W,C,R) and list that number.
 	    try{
-            String query= "SELECT COUNT(R.status) AS Total FROM Customer C, Reservation R, Flight F WHERE  C.id=R.cid AND R.fid=F.fnum AND R.status= ";
-    		String query2 = " AND F.fnum= ";
 	    	System.out.print("\tPlease Enter Passenger Status W,C,R: ");
 	    	String input = in.readLine();
-	    	query += "\'"+input+"\'";
 	    	System.out.print("\tPlease Enter Flight Number: ");
-	    	String input2 = in.readLine();
-	    	query2 += "\'"+input2+"\'";
-	    	query += query2;
+	    	int input2 = Integer.parseInt(in.readLine());
 	    	System.out.print("\tTotal Number of Passengers with Status "+ input + "\n");
-	    	esql.executeQueryAndPrintResult(query);
+	    	esql.executeQueryAndPrintResult(STATUS_COUNT, input, input2);
 		}
 	   catch(Exception e){
 	    	System.err.println (e.getMessage());
 	   }		
 	}
+
+
+	public static void ListPassengerCountsForAllFlights(DBproject esql) {//12
+		// For every flight, list how many passengers are waitlisted, confirmed and reserved
+		try{
+			String query = "SELECT F.fnum, F.actual_departure_date, COALESCE(S.waitlisted, 0) AS waitlisted,"
+						 + " COALESCE(S.confirmed, 0) AS confirmed, COALESCE(S.reserved, 0) AS reserved"
+						 + " FROM Flight F LEFT JOIN FlightStatusCount S ON S.fid = F.fnum ORDER BY F.fnum";
+			int rowCount = esql.executeQueryAndPrintResult(query);
+			System.out.print("\t" + rowCount + " flight(s) listed.\n");
+		}
+		catch(Exception e){
+			System.err.println (e.getMessage());
+		}
+	}
+
+	public static void AddRepair(DBproject esql) {//13
+		// Record a repair of a plane by a technician, reported by a pilot
+		try{
+			System.out.print("\tPlease Enter Repair Date (yyyy-MM-dd): ");
+			java.sql.Date date = java.sql.Date.valueOf(in.readLine().trim());
+			System.out.print("\tPlease Enter Repair Code (MJ, MN or SV): ");
+			String code = in.readLine().trim().toUpperCase();
+			System.out.print("\tPlease Enter Pilot ID: ");
+			int pilotId = Integer.parseInt(in.readLine());
+			System.out.print("\tPlease Enter Plane ID: ");
+			int planeId = Integer.parseInt(in.readLine());
+			System.out.print("\tPlease Enter Technician ID: ");
+			int technicianId = Integer.parseInt(in.readLine());
+			int rid = esql.getRepairs().record(date, code, pilotId, planeId, technicianId);
+			System.out.print("\tRecorded repair " + rid + ".\n");
+		}
+		catch(NumberFormatException e){
+			System.out.print("You must enter a number.\n");
+			System.err.println (e.getMessage());
+		}
+		catch(Exception e){
+			// an IllegalArgumentException for a bad date or code, a SQLException
+			// for a plane, pilot or technician that does not exist
+			System.err.println (e.getMessage());
+		}
+	}
+
+	public static void ShowDashboard(DBproject esql) {//14
+		// Reports 6, 7, 8 and 9 at once, each on its own connection
+		try{
+			System.out.print("\tPlease Enter Flight Number: ");
+			int fnum = Integer.parseInt(in.readLine());
+			System.out.print("\tPlease Enter Departure Date: ");
+			// Throws an IllegalArgumentException unless the date is yyyy-mm-dd
+			java.sql.Date date = java.sql.Date.valueOf(in.readLine().trim());
+			System.out.print("\tPlease Enter Passenger Status W,C,R: ");
+			char status = Character.toUpperCase(readChar());
+			long start = System.nanoTime();
+			Dashboard dashboard = Dashboard.join(Dashboard.load(esql, fnum, date, status));
+			dashboard.print(System.out);
+			System.out.print(String.format("\n\tLoaded in %.1f ms\n", (System.nanoTime() - start) / 1e6));
+		}
+		catch(NumberFormatException e){
+			System.out.print("You must enter a number.\n");
+			System.err.println (e.getMessage());
+		}
+		catch(Exception e){
+			System.err.println (e.getMessage());
+		}
+	}
+
+	public static void ShowMetrics(DBproject esql) {//15
+		// Latency of each operation and SQL shape so far, and the round trips per operation
+		try{
+			Metrics.print(System.out, Metrics.SHAPE_WIDTH);
+			System.out.print("\n\tFile to dump the metrics to, or empty to skip: ");
+			String path = in.readLine().trim();
+			if(!path.isEmpty()){
+				Metrics.dump(path);
+				System.out.print("\tWrote " + path + "\n");
+			}
+		}
+		catch(Exception e){
+			System.err.println (e.getMessage());
+		}
+	}
     
     /*
      * Helper functions
     */
 
-    // Adds a flight to the flight table and returns the primary key inserted. 
+    // Adds a flight to the flight table and returns the primary key inserted, or -1 when it could not be added.
     public static int InsertFlight(DBproject esql){
-	    int max_value = 0;
+	    int max_value = -1;
         try{
             // Get user input for the flight details information
             System.out.print("\tPlease Enter Ticket Cost: ");
@@ -868,40 +1399,13 @@ public class DBproject{
 		    String depAir = in.readLine();
 		    System.out.print("\n");
 
-            // Get the max id in the reservations table and increment it by one, then
+            // Take the next flight number from the block this program holds, then
             // insert a new flight.
-		    String find_max="SELECT MAX(F.fnum) from Flight F;";
-		    List<List<String>> rs = esql.executeQueryAndReturnResult(find_max);
-		    String info = "SELECT * FROM Flight F Where F.fnum= ";
-
-		    String insert_flight = "INSERT INTO Flight (fnum, cost, num_sold, num_stops,"
-                                 + " actual_departure_date, actual_arrival_date, arrival_airport, departure_airport)";
-
-            // If flight table has no records create new flight and insert it. Otherwise, get max flight number from flight
-            // table, increment it by one and insert this as the new flight number.
-            if(rs.size()==0){
-                info += "\'"+max_value+"\';";
-		        insert_flight += " VALUES  (" + max_value + ", \'" + tCost + "\',\'" + numSold + "\',\'" + numStops + "\',\'" 
-                              + actDep + "\'," + " \'" + actArv + "\',\'" + arvAir + "\',\'" + depAir + "\');";
-		        System.out.print("\tFlight Information entered: "+"\n");
-		        esql.executeUpdate(insert_flight);
-		        esql.executeQueryAndPrintResult(info);                    
-            }
-            else{
-                // Get the max flight number in the flight table
-		        for(List<String> row : rs){
-		            for(String s: row){
-                        max_value = Integer.parseInt(s);
-		            }
-                }
-		        max_value++;
-		        info += "\'"+max_value+"\';";
-		        insert_flight += " VALUES  (" + max_value + ", \'" + tCost + "\',\'" + numSold + "\',\'" + numStops + "\',\'" 
-                             + actDep + "\'," + " \'" + actArv + "\',\'" + arvAir + "\',\'" + depAir + "\');";
-		        System.out.print("\tFlight Information entered: "+"\n");
-		        esql.executeUpdate(insert_flight);
-		        esql.executeQueryAndPrintResult(info);	
-           }
+		    int fnum = esql.nextId(KeyAllocator.FLIGHT);
+		    System.out.print("\tFlight Information entered: "+"\n");
+		    esql.executeUpdateAndPrintResult(INSERT_FLIGHT, fnum, tCost, numSold, numStops,
+                               java.sql.Date.valueOf(actDep), java.sql.Date.valueOf(actArv), arvAir, depAir);
+		    max_value = fnum;
         }
         catch(NumberFormatException e){
             System.out.print("You must enter a number.\n");
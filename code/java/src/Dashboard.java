@@ -0,0 +1,118 @@
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Reports 6, 7, 8 and 9 together: the seats left on a flight, the repairs
+ * per plane and per year and the passengers of the flight with a status.
+ * load starts the four on the AsyncExecutor at once, each on its own pooled
+ * connection, so the dashboard takes about as long as its slowest report
+ * instead of the sum of all four.
+ *
+ */
+
+public class Dashboard {
+	final int fnum;
+	final java.sql.Date date;
+	final char status;
+	final int[] seats;
+	final ResultTable repairsPerPlane;
+	final ResultTable repairsPerYear;
+	final long passengers;
+
+	private Dashboard(int fnum, java.sql.Date date, char status, int[] seats, ResultTable repairsPerPlane,
+			ResultTable repairsPerYear, ResultTable passengers) {
+		this.fnum = fnum;
+		this.date = date;
+		this.status = status;
+		this.seats = seats;
+		this.repairsPerPlane = repairsPerPlane;
+		this.repairsPerYear = repairsPerYear;
+		this.passengers = passengers.getLong(0, 0);
+	}
+
+	/**
+	 * Method to run the four reports in parallel.
+	 *
+	 * @param fnum the flight of reports 6 and 9
+	 * @param date the departure date of report 6
+	 * @param status W, R or C, for report 9
+	 * @return completes once every report has, or exceptionally with the
+	 *   first failure
+	 */
+	public static CompletableFuture<Dashboard> load(final DBproject esql, final int fnum, final java.sql.Date date,
+			final char status) {
+		AsyncExecutor async = esql.getAsync();
+		final CompletableFuture<int[]> seats = async.submit(new Callable<int[]>() {
+			public int[] call() throws SQLException {
+				return esql.getAvailability().getAvailableSeats(fnum, date);
+			}
+		});
+		final CompletableFuture<ResultTable> perPlane = async.query(RepairRollups.PER_PLANE);
+		final CompletableFuture<ResultTable> perYear = async.query(RepairRollups.PER_YEAR);
+		final CompletableFuture<ResultTable> passengers = async.query(DBproject.STATUS_COUNT,
+			String.valueOf(status), fnum);
+		return CompletableFuture.allOf(seats, perPlane, perYear, passengers).thenApply(
+			new Function<Void, Dashboard>() {
+				public Dashboard apply(Void done) {
+					return new Dashboard(fnum, date, status, seats.join(), perPlane.join(), perYear.join(),
+						passengers.join());
+				}
+			});
+	}
+
+	/**
+	 * Method to run the four reports one after another on the calling
+	 * thread, as the menu did; for comparison with load.
+	 */
+	public static Dashboard loadSequentially(DBproject esql, int fnum, java.sql.Date date, char status)
+			throws SQLException {
+		return new Dashboard(fnum, date, status, esql.getAvailability().getAvailableSeats(fnum, date),
+			esql.executeQueryAndReturnTable(RepairRollups.PER_PLANE),
+			esql.executeQueryAndReturnTable(RepairRollups.PER_YEAR),
+			esql.executeQueryAndReturnTable(DBproject.STATUS_COUNT, String.valueOf(status), fnum));
+	}
+
+	/**
+	 * Method to wait for a dashboard, unwrapping the SQLException of a
+	 * failed report.
+	 */
+	public static Dashboard join(CompletableFuture<Dashboard> dashboard) throws SQLException {
+		try {
+			return dashboard.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof SQLException)
+				throw (SQLException) e.getCause();
+			throw e;
+		}
+	}
+
+	public void print(PrintStream out) {
+		out.print("\tSeats left on flight " + this.fnum + " departing " + this.date + ":");
+		if (this.seats.length == 0)
+			out.print(" no such departure");
+		for (int available : this.seats)
+			out.print(" " + available);
+		out.print("\n\tPassengers with status " + this.status + ": " + this.passengers + "\n");
+		out.print("\n\tRepairs per plane\n");
+		printTable(out, this.repairsPerPlane);
+		out.print("\n\tRepairs per year\n");
+		printTable(out, this.repairsPerYear);
+	}
+
+	private static void printTable(PrintStream out, ResultTable table) {
+		StringBuilder line = new StringBuilder();
+		for (int col = 0; col < table.getColumnCount(); ++col)
+			line.append(col == 0 ? "" : "\t").append(table.getColumnName(col));
+		out.println(line);
+		for (int row = 0; row < table.getRowCount(); ++row) {
+			line.setLength(0);
+			for (int col = 0; col < table.getColumnCount(); ++col)
+				line.append(col == 0 ? "" : "\t").append(table.getString(row, col));
+			out.println(line);
+		}
+	}
+}//end Dashboard
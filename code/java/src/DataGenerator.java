@@ -0,0 +1,501 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the nine CSV files of code/data at any scale, for loading with
+ * DBproject --load or create.sql.  The rows are consistent with each
+ * other: every foreign key points at a generated row, a customer holds at
+ * most one reservation per flight, and num_sold of every flight is the
+ * number of its R and C reservations, never more than the seats of its
+ * plane.  Values stay inside the domains of create.sql: statuses are W, C
+ * or R, repair codes MJ, MN or SV, seats between 1 and 499, and zip codes
+ * match us_postal_code.
+ *
+ * Every value is a hash of the seed, the table and the row number, so the
+ * same arguments always write the same files, byte for byte, and each
+ * table can be written on its own thread without sharing any state.  A
+ * file is written through a FileChannel from a direct buffer of
+ * BUFFER_BYTES.
+ *
+ * Usage: java -cp bin/ DataGenerator <directory> <flights> <reservations> [seed]
+ *
+ * The other tables are sized from the flights and reservations, in about
+ * the proportions of the sample data; see Sizes.
+ *
+ */
+
+public class DataGenerator {
+	static final long DEFAULT_SEED = 42;
+	static final int BUFFER_BYTES = 1024 * 1024;
+	// longer than any generated row, so a row never straddles a flush
+	static final int MAX_ROW_BYTES = 512;
+	static final int AIRPORTS = 500;
+	// flights depart and repairs happen between these days
+	static final long FIRST_DEPARTURE = LocalDate.of(2014, 1, 1).toEpochDay();
+	static final long FIRST_REPAIR = LocalDate.of(2010, 1, 1).toEpochDay();
+	static final int DAYS = 3 * 365;
+	// one reservation in this many is waitlisted even when seats are left
+	static final int WAITLISTED = 4;
+
+	// salts that keep the hashes of each column independent
+	static final int PLANE_OF_FLIGHT = 1, SEATS = 2, STATUS = 3, CUSTOMER_OFFSET = 4, DEPARTURE = 5,
+		ARRIVAL = 6, AIRPORT = 7, PILOT_OF_FLIGHT = 8, PERSON = 9, PLANE = 10, REPAIR = 11, COST = 12;
+
+	static final String[] FIRST_NAMES = { "Armand", "Alberto", "Wyatt", "Maria", "Jennifer", "Linda", "James",
+		"Robert", "Michael", "David", "Susan", "Karen", "Nancy", "Daniel", "Paul", "Mark", "Laura", "Sarah",
+		"Kevin", "Brian", "Emily", "Olivia", "Noah", "Liam", "Sofia", "Mateo", "Aiko", "Wei", "Priya", "Omar" };
+	static final String[] LAST_NAMES = { "Enderle", "Scarlett", "Ruoff", "Smith", "Johnson", "Williams", "Brown",
+		"Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez", "Hernandez", "Lopez", "Wilson", "Anderson",
+		"Thomas", "Taylor", "Moore", "Jackson", "Martin", "Lee", "Thompson", "White", "Harris", "Clark", "Lewis",
+		"Nguyen", "Patel" };
+	static final String[] FEMALE = { "Maria", "Jennifer", "Linda", "Susan", "Karen", "Nancy", "Laura", "Sarah",
+		"Emily", "Olivia", "Sofia", "Aiko", "Priya" };
+	static final String[] STREETS = { "Chapel Drive", "Bald Hill Street", "Campfire Ave.", "Main Street",
+		"Oak Lane", "Maple Avenue", "Cedar Road", "Park Place", "Lake View Drive", "Sunset Blvd." };
+	static final String[] CITIES = { "Melbourne", "Baton Rouge", "Cockeysville", "Riverside", "Springfield",
+		"Fairview", "Madison", "Georgetown", "Salem", "Franklin" };
+	static final String[] NATIONALITIES = { "Australia", "Morocco", "India", "United States", "Canada", "Mexico",
+		"Brazil", "France", "Germany", "Japan", "China", "Nigeria", "Egypt", "Spain", "Italy" };
+	static final String[][] MODELS = {
+		{ "Airbus", "AirbusA300" }, { "Airbus", "AirbusA310" }, { "Airbus", "AirbusA320" },
+		{ "Airbus", "AirbusA330" }, { "Airbus", "AirbusA380" }, { "Boeing", "Boeing737" },
+		{ "Boeing", "Boeing747" }, { "Boeing", "Boeing767" }, { "Boeing", "Boeing777" },
+		{ "Boeing", "Boeing787" }, { "Bombadier", "BombardierCRJ200" }, { "Embraer", "EmbraerE190" } };
+	static final String[] REPAIR_CODES = { "MJ", "MN", "SV" };
+
+	/**
+	 * The number of rows of each table.
+	 */
+	static final class Sizes {
+		final int flights;
+		final int reservations;
+		final int customers;
+		final int pilots;
+		final int planes;
+		final int technicians;
+		final int repairs;
+
+		Sizes(int flights, int reservations) {
+			if (flights <= 0 || reservations < 0)
+				throw new IllegalArgumentException("Need at least one flight and no negative reservations");
+			this.flights = flights;
+			this.reservations = reservations;
+			// enough customers that no flight needs the same one twice
+			int perFlight = (int) ((reservations + (long) flights - 1) / flights);
+			this.customers = Math.max(Math.max(250, reservations / 40), perFlight);
+			this.pilots = Math.max(250, flights / 8);
+			this.planes = Math.max(67, flights / 30);
+			this.technicians = Math.max(250, flights / 8);
+			this.repairs = Math.max(549, this.planes * 8);
+		}
+
+		long total() {
+			// Flight, FlightInfo and Schedule have a row per flight
+			return 3L * this.flights + this.reservations + this.customers + this.pilots + this.planes
+				+ this.technicians + this.repairs;
+		}
+	}//end Sizes
+
+	private final File directory;
+	private final Sizes sizes;
+	private final long seed;
+
+	public DataGenerator(File directory, Sizes sizes, long seed) {
+		this.directory = directory;
+		this.sizes = sizes;
+		this.seed = seed;
+	}
+
+	/**
+	 * Method to write every file, each on its own thread.
+	 *
+	 * @param threads the number of files written at the same time
+	 * @return the total number of rows written
+	 * @throws java.io.IOException when a file cannot be written
+	 */
+	public long generate(int threads) throws IOException {
+		if (!this.directory.isDirectory() && !this.directory.mkdirs())
+			throw new IOException("Cannot create " + this.directory.getPath());
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Long>> writes = new ArrayList<Future<Long>>();
+			for (final AirlineSchema.Table table : AirlineSchema.TABLES)
+				writes.add(executor.submit(new Callable<Long>() {
+					public Long call() throws IOException {
+						return write(table);
+					}
+				}));
+			long rows = 0;
+			for (Future<Long> write : writes)
+				rows += write.get();
+			System.out.println(String.format("Wrote %d rows in %.1f ms", rows, (System.nanoTime() - start) / 1e6));
+			return rows;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing " + this.directory.getPath());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private long write(AirlineSchema.Table table) throws IOException {
+		long start = System.nanoTime();
+		Csv csv = new Csv(new File(this.directory, table.file));
+		long rows;
+		try {
+			if (table == AirlineSchema.CUSTOMER)
+				rows = writeCustomers(csv);
+			else if (table == AirlineSchema.PILOT)
+				rows = writePilots(csv);
+			else if (table == AirlineSchema.PLANE)
+				rows = writePlanes(csv);
+			else if (table == AirlineSchema.TECHNICIAN)
+				rows = writeTechnicians(csv);
+			else if (table == AirlineSchema.FLIGHT)
+				rows = writeFlights(csv);
+			else if (table == AirlineSchema.RESERVATION)
+				rows = writeReservations(csv);
+			else if (table == AirlineSchema.FLIGHT_INFO)
+				rows = writeFlightInfo(csv);
+			else if (table == AirlineSchema.REPAIRS)
+				rows = writeRepairs(csv);
+			else
+				rows = writeSchedule(csv);
+		} finally {
+			csv.close();
+		}
+		System.out.println(String.format("\t%s: %d rows in %.1f ms", table.name, rows,
+			(System.nanoTime() - start) / 1e6));
+		return rows;
+	}
+
+	private long writeCustomers(Csv csv) throws IOException {
+		for (int id = 0; id < this.sizes.customers; ++id) {
+			long h = hash(PERSON, id);
+			String fname = pick(FIRST_NAMES, h);
+			csv.field(id).field(fname).field(pick(LAST_NAMES, h >>> 16));
+			csv.field(isFemale(fname) ? "F" : "M");
+			// born between 1940 and 1999
+			csv.date(LocalDate.of(1940, 1, 1).toEpochDay() + (h >>> 24) % (60 * 365));
+			csv.field(1 + (h >>> 8) % 9999 + " " + pick(STREETS, h >>> 32) + " " + pick(CITIES, h >>> 40));
+			long digits = hash(PERSON, id, 1);
+			// no leading 0 or 1 in an area code
+			csv.field(2000000000L + (digits >>> 1) % 8000000000L);
+			String zip = padded((digits >>> 20) % 100000, 5);
+			csv.field((digits & 3) == 0 ? zip + "-" + padded((digits >>> 40) % 10000, 4) : zip);
+			csv.endRow();
+		}
+		return this.sizes.customers;
+	}
+
+	private long writePilots(Csv csv) throws IOException {
+		for (int id = 0; id < this.sizes.pilots; ++id) {
+			long h = hash(PERSON, id, 2);
+			csv.field(id).field(pick(FIRST_NAMES, h) + " " + pick(LAST_NAMES, h >>> 16))
+				.field(pick(NATIONALITIES, h >>> 32)).endRow();
+		}
+		return this.sizes.pilots;
+	}
+
+	private long writePlanes(Csv csv) throws IOException {
+		for (int id = 0; id < this.sizes.planes; ++id) {
+			String[] model = MODELS[(int) (hash(PLANE, id) % MODELS.length)];
+			csv.field(id).field(model[0]).field(model[1]).field(hash(PLANE, id, 1) % 40)
+				.field(seats(id)).endRow();
+		}
+		return this.sizes.planes;
+	}
+
+	private long writeTechnicians(Csv csv) throws IOException {
+		for (int id = 0; id < this.sizes.technicians; ++id) {
+			long h = hash(PERSON, id, 3);
+			csv.field(id).field(pick(FIRST_NAMES, h) + " " + pick(LAST_NAMES, h >>> 16)).endRow();
+		}
+		return this.sizes.technicians;
+	}
+
+	private long writeFlights(Csv csv) throws IOException {
+		for (int fnum = 0; fnum < this.sizes.flights; ++fnum) {
+			long departure = departure(fnum);
+			long stops = hash(COST, fnum, 1) % 4;
+			int from = (int) (hash(AIRPORT, fnum) % AIRPORTS);
+			// any other airport
+			int to = (int) ((from + 1 + hash(AIRPORT, fnum, 1) % (AIRPORTS - 1)) % AIRPORTS);
+			csv.field(fnum).field(100 + hash(COST, fnum) % 900).field(sold(fnum)).field(stops)
+				.timestamp(departure).timestamp(arrival(fnum, departure))
+				.field(airport(to)).field(airport(from)).endRow();
+		}
+		return this.sizes.flights;
+	}
+
+	/*
+	 * Reservation r is the r / flights-th reservation of flight r % flights,
+	 * so the flights' reservations are interleaved as if booked over time.
+	 */
+	private long writeReservations(Csv csv) throws IOException {
+		int flights = this.sizes.flights;
+		for (int rnum = 0; rnum < this.sizes.reservations; ++rnum) {
+			int fid = rnum % flights;
+			int k = rnum / flights;
+			int cid = (int) ((hash(CUSTOMER_OFFSET, fid) % this.sizes.customers + k) % this.sizes.customers);
+			csv.field(rnum).field(cid).field(fid).field(status(fid, k)).endRow();
+		}
+		return this.sizes.reservations;
+	}
+
+	private long writeFlightInfo(Csv csv) throws IOException {
+		for (int fnum = 0; fnum < this.sizes.flights; ++fnum)
+			csv.field(fnum).field(fnum).field(hash(PILOT_OF_FLIGHT, fnum) % this.sizes.pilots)
+				.field(planeOf(fnum)).endRow();
+		return this.sizes.flights;
+	}
+
+	private long writeRepairs(Csv csv) throws IOException {
+		for (int rid = 0; rid < this.sizes.repairs; ++rid) {
+			long h = hash(REPAIR, rid);
+			csv.field(rid).date(FIRST_REPAIR + h % (2 * DAYS)).field(pick(REPAIR_CODES, h >>> 16))
+				.field(hash(REPAIR, rid, 1) % this.sizes.pilots)
+				.field(hash(REPAIR, rid, 2) % this.sizes.planes)
+				.field(hash(REPAIR, rid, 3) % this.sizes.technicians).endRow();
+		}
+		return this.sizes.repairs;
+	}
+
+	private long writeSchedule(Csv csv) throws IOException {
+		for (int fnum = 0; fnum < this.sizes.flights; ++fnum) {
+			long departure = departure(fnum);
+			csv.field(fnum).field(fnum).timestamp(departure).timestamp(arrival(fnum, departure)).endRow();
+		}
+		return this.sizes.flights;
+	}
+
+	int planeOf(int fnum) {
+		return (int) (hash(PLANE_OF_FLIGHT, fnum) % this.sizes.planes);
+	}
+
+	// between 50 and 499, inside _SEATS
+	int seats(int plane) {
+		return 50 + (int) (hash(SEATS, plane) % 450);
+	}
+
+	int reservationsOf(int fnum) {
+		int flights = this.sizes.flights;
+		return this.sizes.reservations / flights + (fnum < this.sizes.reservations % flights ? 1 : 0);
+	}
+
+	/*
+	 * The status of the k-th reservation of a flight: waitlisted once the
+	 * first seats(plane) reservations are past, and at random before.
+	 */
+	String status(int fnum, int k) {
+		if (k >= seats(planeOf(fnum)))
+			return "W";
+		long h = hash(STATUS, fnum, k);
+		if (h % WAITLISTED == 0)
+			return "W";
+		return (h >>> 16) % 2 == 0 ? "R" : "C";
+	}
+
+	// the reservations of a flight holding a seat, as status hands them out
+	int sold(int fnum) {
+		int holding = Math.min(reservationsOf(fnum), seats(planeOf(fnum)));
+		int sold = 0;
+		for (int k = 0; k < holding; ++k)
+			if (!status(fnum, k).equals("W"))
+				++sold;
+		return sold;
+	}
+
+	// departure time in minutes since the epoch
+	long departure(int fnum) {
+		return (FIRST_DEPARTURE + hash(DEPARTURE, fnum) % DAYS) * 24 * 60 + hash(DEPARTURE, fnum, 1) % (24 * 60);
+	}
+
+	// one to sixteen hours after departure
+	long arrival(int fnum, long departure) {
+		return departure + 60 + hash(ARRIVAL, fnum) % (15 * 60);
+	}
+
+	String airport(int index) {
+		long h = hash(AIRPORT, index, 2);
+		char[] code = new char[5];
+		for (int i = 0; i < code.length; ++i) {
+			code[i] = (char) ('A' + h % 26);
+			h /= 26;
+		}
+		return new String(code);
+	}
+
+	private static boolean isFemale(String fname) {
+		for (String name : FEMALE)
+			if (name.equals(fname))
+				return true;
+		return false;
+	}
+
+	private static String padded(long value, int width) {
+		String digits = Long.toString(value);
+		StringBuilder sb = new StringBuilder(width);
+		for (int i = digits.length(); i < width; ++i)
+			sb.append('0');
+		return sb.append(digits).toString();
+	}
+
+	private static String pick(String[] values, long h) {
+		return values[(int) ((h & Long.MAX_VALUE) % values.length)];
+	}
+
+	// a non-negative hash of the seed, the column and the row
+	long hash(int salt, long row) {
+		return mix(this.seed * 0x9E3779B97F4A7C15L + mix(salt * 0xBF58476D1CE4E5B9L + row)) >>> 1;
+	}
+
+	long hash(int salt, long row, long k) {
+		return mix(hash(salt, row) + 0x94D049BB133111EBL * (k + 1)) >>> 1;
+	}
+
+	// the SplitMix64 finalizer
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/*
+	 * One CSV file in the text format create.sql copies: fields separated
+	 * by commas, no quoting, so no generated value contains a comma.  Rows
+	 * are encoded as ASCII straight into a direct buffer, which is written
+	 * to the channel whenever another row might not fit.
+	 */
+	private static final class Csv {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+		private final byte[] digits = new byte[20];
+		private boolean first = true;
+
+		Csv(File file) throws IOException {
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		private void separate() {
+			if (!this.first)
+				this.buffer.put((byte) ',');
+			this.first = false;
+		}
+
+		Csv field(long value) {
+			separate();
+			putDigits(value, 1);
+			return this;
+		}
+
+		Csv field(String value) {
+			separate();
+			for (int i = 0; i < value.length(); ++i)
+				this.buffer.put((byte) value.charAt(i));
+			return this;
+		}
+
+		// yyyy-mm-dd
+		Csv date(long epochDay) {
+			separate();
+			putDate(epochDay);
+			return this;
+		}
+
+		// yyyy-mm-dd hh:mm, as the sample data writes departures
+		Csv timestamp(long epochMinute) {
+			separate();
+			putDate(epochMinute / (24 * 60));
+			int minute = (int) (epochMinute % (24 * 60));
+			this.buffer.put((byte) ' ');
+			putDigits(minute / 60, 2);
+			this.buffer.put((byte) ':');
+			putDigits(minute % 60, 2);
+			return this;
+		}
+
+		void endRow() throws IOException {
+			this.buffer.put((byte) '\n');
+			this.first = true;
+			if (this.buffer.remaining() < MAX_ROW_BYTES)
+				flush();
+		}
+
+		private void putDate(long epochDay) {
+			LocalDate date = LocalDate.ofEpochDay(epochDay);
+			putDigits(date.getYear(), 4);
+			this.buffer.put((byte) '-');
+			putDigits(date.getMonthValue(), 2);
+			this.buffer.put((byte) '-');
+			putDigits(date.getDayOfMonth(), 2);
+		}
+
+		// a non-negative value, zero padded to width
+		private void putDigits(long value, int width) {
+			int length = 0;
+			do {
+				this.digits[length++] = (byte) ('0' + value % 10);
+				value /= 10;
+			} while (value > 0);
+			while (length < width)
+				this.digits[length++] = '0';
+			while (length > 0)
+				this.buffer.put(this.digits[--length]);
+		}
+
+		private void flush() throws IOException {
+			this.buffer.flip();
+			while (this.buffer.hasRemaining())
+				this.channel.write(this.buffer);
+			this.buffer.clear();
+		}
+
+		void close() throws IOException {
+			try {
+				flush();
+			} finally {
+				this.channel.close();
+			}
+		}
+	}//end Csv
+
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.err.println(
+				"Usage: java [-classpath <classpath>] " + DataGenerator.class.getName() +
+				" <directory> <flights> <reservations> [seed]");
+			return;
+		}//end if
+
+		try {
+			Sizes sizes = new Sizes(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+			long seed = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+			System.out.println(String.format("Generating %d rows: %d flights, %d reservations, %d customers,"
+				+ " %d pilots, %d planes, %d technicians, %d repairs", sizes.total(), sizes.flights,
+				sizes.reservations, sizes.customers, sizes.pilots, sizes.planes, sizes.technicians, sizes.repairs));
+			new DataGenerator(new File(args[0]), sizes, seed).generate(
+				Math.min(AirlineSchema.TABLES.length, Runtime.getRuntime().availableProcessors()));
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+}//end DataGenerator
@@ -0,0 +1,198 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.postgresql.PGConnection;
+
+/**
+ * Reloads the nine tables from the CSV files in a directory such as
+ * code/data, in process, instead of copying the files into the server's
+ * data directory and running create.sql.  Each file is streamed through
+ * COPY FROM STDIN on its own pooled connection.  A table starts loading as
+ * soon as every table it references has finished, so Customer, Pilot,
+ * Plane, Technician and Flight load in parallel and Reservation, FlightInfo,
+ * Repairs and Schedule follow as their parents complete.
+ *
+ * The triggers that keep the derived tables of AirlineSchema.DERIVED are
+ * disabled during the COPYs, as createPostgreDB.sh loads the files before
+ * it creates them, and each derived table is then refilled with one
+ * grouped query.  Writes from other clients during a load are not counted
+ * in the derived tables.
+ *
+ * The tables must already exist; their current rows are truncated.
+ *
+ */
+
+public class DataLoader {
+	// read buffer for each CSV file, also the COPY chunk size
+	static final int COPY_BUFFER_BYTES = 256 * 1024;
+
+	private final DBproject esql;
+	private final File directory;
+
+	public DataLoader(DBproject esql, File directory) {
+		this.esql = esql;
+		this.directory = directory;
+	}
+
+	/**
+	 * Method to truncate and reload every table.
+	 *
+	 * @param threads the number of tables loaded at the same time
+	 * @return the total number of rows loaded
+	 * @throws java.sql.SQLException when a table fails to load
+	 * @throws java.io.IOException when a data file cannot be read
+	 */
+	public long load(int threads) throws SQLException, IOException {
+		for (AirlineSchema.Table table : AirlineSchema.TABLES) {
+			File file = new File(this.directory, table.file);
+			if (!file.canRead())
+				throw new IOException("Cannot read " + file.getPath());
+		}
+
+		List<AirlineSchema.Derived> derived = new ArrayList<AirlineSchema.Derived>();
+		for (AirlineSchema.Derived table : AirlineSchema.DERIVED)
+			if (!this.esql.executeQueryAndReturnTable("SELECT to_regclass(?);", table.name).isNull(0, 0))
+				derived.add(table);
+
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (String disable : alterTriggers(derived, "DISABLE"))
+				this.esql.executeUpdate(disable);
+			// TRUNCATE fires no row triggers, so derived tables are emptied too
+			StringBuilder truncate = new StringBuilder("TRUNCATE ");
+			for (int i = 0; i < AirlineSchema.TABLES.length; ++i)
+				truncate.append(i == 0 ? "" : ", ").append(AirlineSchema.TABLES[i].name);
+			for (AirlineSchema.Derived table : derived)
+				truncate.append(", ").append(table.name);
+			this.esql.executeUpdate(truncate.toString());
+
+			// TABLES lists parents first, so every dependency is already scheduled
+			Map<String, CompletableFuture<Long>> loads = new HashMap<String, CompletableFuture<Long>>();
+			for (final AirlineSchema.Table table : AirlineSchema.TABLES) {
+				CompletableFuture<?>[] parents = new CompletableFuture<?>[table.references.length];
+				for (int i = 0; i < parents.length; ++i)
+					parents[i] = loads.get(table.references[i]);
+				CompletableFuture<Long> load = CompletableFuture.allOf(parents)
+					.thenApplyAsync(ignored -> copy(table), executor);
+				loads.put(table.name, load);
+			}
+
+			long rows = 0;
+			for (AirlineSchema.Table table : AirlineSchema.TABLES)
+				rows += loads.get(table.name).join();
+			// the files bring their own keys, so move the key sequences past them
+			this.esql.getKeys().resync();
+			System.out.println(String.format("Loaded %d rows in %.1f ms", rows, (System.nanoTime() - start) / 1e6));
+			return rows;
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof LoadException)
+				cause = cause.getCause();
+			if (cause instanceof SQLException)
+				throw (SQLException) cause;
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			throw e;
+		} finally {
+			executor.shutdownNow();
+			// also after a failed load, so the triggers never stay off and
+			// the derived tables match whatever rows were loaded
+			refill(derived);
+		}
+	}
+
+	/*
+	 * Builds the ALTER TABLE ... ENABLE or DISABLE TRIGGER statements for
+	 * the triggers of the derived tables, once per trigger.
+	 */
+	private static Set<String> alterTriggers(List<AirlineSchema.Derived> derived, String action) {
+		Set<String> statements = new LinkedHashSet<String>();
+		for (AirlineSchema.Derived table : derived)
+			statements.add("ALTER TABLE " + table.source.name + " " + action + " TRIGGER " + table.trigger + ";");
+		return statements;
+	}
+
+	/*
+	 * Recomputes every derived table from its source and enables the
+	 * triggers again, in one transaction.
+	 */
+	private void refill(List<AirlineSchema.Derived> derived) throws SQLException {
+		if (derived.isEmpty())
+			return;
+		long start = System.nanoTime();
+		PooledConnection conn = this.esql.borrowConnection();
+		try {
+			Connection raw = conn.getConnection();
+			raw.setAutoCommit(false);
+			for (AirlineSchema.Derived table : derived) {
+				DBproject.prepare(conn, "DELETE FROM " + table.name + ";").executeUpdate();
+				DBproject.prepare(conn, table.refill).executeUpdate();
+			}
+			for (String enable : alterTriggers(derived, "ENABLE"))
+				DBproject.prepare(conn, enable).executeUpdate();
+			raw.commit();
+		} catch (SQLException e) {
+			conn.checkBroken(e);
+			throw e;
+		} finally {
+			// release rolls back if commit was not reached
+			this.esql.releaseConnection(conn);
+		}
+		System.out.println(String.format("\tderived tables: %d refilled in %.1f ms", derived.size(),
+			(System.nanoTime() - start) / 1e6));
+	}
+
+	private long copy(AirlineSchema.Table table) {
+		long start = System.nanoTime();
+		PooledConnection conn = null;
+		try {
+			conn = this.esql.borrowConnection();
+			InputStream csv = new BufferedInputStream(
+				new FileInputStream(new File(this.directory, table.file)), COPY_BUFFER_BYTES);
+			long rows;
+			try {
+				// the same text format create.sql reads the files with
+				rows = conn.getConnection().unwrap(PGConnection.class).getCopyAPI().copyIn(
+					"COPY " + table.target() + " FROM STDIN WITH DELIMITER ','", csv, COPY_BUFFER_BYTES);
+			} finally {
+				csv.close();
+			}
+			System.out.println(String.format("\t%s: %d rows in %.1f ms", table.name, rows,
+				(System.nanoTime() - start) / 1e6));
+			return rows;
+		} catch (SQLException e) {
+			if (conn != null)
+				conn.checkBroken(e);
+			throw new LoadException(e);
+		} catch (IOException e) {
+			throw new LoadException(e);
+		} finally {
+			this.esql.releaseConnection(conn);
+		}
+	}
+
+	// carries a checked failure out of a CompletableFuture stage
+	private static class LoadException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		LoadException(Exception cause) {
+			super(cause.getMessage(), cause);
+		}
+	}
+}//end DataLoader
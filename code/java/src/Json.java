@@ -0,0 +1,218 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The little JSON ApiServer needs, so the project keeps to the JDK and the
+ * JDBC driver: parsing a flat request object and writing query results.
+ *
+ * A request body is one object whose values are strings, numbers, true,
+ * false or null; nested objects and arrays are rejected.  Numbers are read
+ * as Long when they are integral and Double otherwise.
+ *
+ */
+
+public class Json {
+	private final String text;
+	private int pos = 0;
+
+	private Json(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * Method to parse a flat JSON object.
+	 *
+	 * @param text the JSON text
+	 * @return the members in the order they appear
+	 * @throws IllegalArgumentException when the text is not such an object
+	 */
+	public static Map<String, Object> parseObject(String text) {
+		Json parser = new Json(text);
+		Map<String, Object> members = new LinkedHashMap<String, Object>();
+		parser.expect('{');
+		if (parser.peek() != '}') {
+			do {
+				String name = parser.string();
+				parser.expect(':');
+				members.put(name, parser.value());
+			} while (parser.accept(','));
+		}
+		parser.expect('}');
+		if (parser.peek() != 0)
+			throw parser.error("Unexpected text after the object");
+		return members;
+	}
+
+	/**
+	 * Method to write the rows of a table as an array of objects keyed by
+	 * column name.  INTEGER and BIGINT columns are written as numbers, every
+	 * other column as a string.
+	 */
+	public static String write(ResultTable table) {
+		StringBuilder out = new StringBuilder("[");
+		for (int row = 0; row < table.getRowCount(); ++row) {
+			if (row > 0)
+				out.append(',');
+			writeRow(out, table, row);
+		}
+		return out.append(']').toString();
+	}
+
+	/**
+	 * Method to write one row of a table as an object keyed by column name.
+	 */
+	public static String writeRow(ResultTable table, int row) {
+		StringBuilder out = new StringBuilder();
+		writeRow(out, table, row);
+		return out.toString();
+	}
+
+	private static void writeRow(StringBuilder out, ResultTable table, int row) {
+		out.append('{');
+		for (int col = 0; col < table.getColumnCount(); ++col) {
+			if (col > 0)
+				out.append(',');
+			quote(out, table.getColumnName(col)).append(':');
+			String value = table.getString(row, col);
+			if (value == null)
+				out.append("null");
+			else if (table.isInteger(col))
+				out.append(value);
+			else
+				quote(out, value);
+		}
+		out.append('}');
+	}
+
+	/**
+	 * Method to write a single member object, such as {"error":"..."}.
+	 */
+	public static String object(String name, Object value) {
+		StringBuilder out = new StringBuilder("{");
+		quote(out, name).append(':');
+		if (value == null)
+			out.append("null");
+		else if (value instanceof Number || value instanceof Boolean)
+			out.append(value);
+		else
+			quote(out, value.toString());
+		return out.append('}').toString();
+	}
+
+	static StringBuilder quote(StringBuilder out, String s) {
+		out.append('"');
+		for (int i = 0; i < s.length(); ++i) {
+			char c = s.charAt(i);
+			switch (c) {
+				case '"': out.append("\\\""); break;
+				case '\\': out.append("\\\\"); break;
+				case '\n': out.append("\\n"); break;
+				case '\r': out.append("\\r"); break;
+				case '\t': out.append("\\t"); break;
+				default:
+					if (c < 0x20)
+						out.append(String.format("\\u%04x", (int) c));
+					else
+						out.append(c);
+			}
+		}
+		return out.append('"');
+	}
+
+	private Object value() {
+		char c = peek();
+		if (c == '"')
+			return string();
+		if (c == '-' || (c >= '0' && c <= '9'))
+			return number();
+		if (this.text.startsWith("true", this.pos)) {
+			this.pos += 4;
+			return Boolean.TRUE;
+		}
+		if (this.text.startsWith("false", this.pos)) {
+			this.pos += 5;
+			return Boolean.FALSE;
+		}
+		if (this.text.startsWith("null", this.pos)) {
+			this.pos += 4;
+			return null;
+		}
+		throw error("Expected a string, number, true, false or null");
+	}
+
+	private String string() {
+		expect('"');
+		StringBuilder s = new StringBuilder();
+		while (true) {
+			if (this.pos >= this.text.length())
+				throw error("Unterminated string");
+			char c = this.text.charAt(this.pos++);
+			if (c == '"')
+				return s.toString();
+			if (c != '\\') {
+				s.append(c);
+				continue;
+			}
+			if (this.pos >= this.text.length())
+				throw error("Unterminated string");
+			char escape = this.text.charAt(this.pos++);
+			switch (escape) {
+				case '"': case '\\': case '/': s.append(escape); break;
+				case 'b': s.append('\b'); break;
+				case 'f': s.append('\f'); break;
+				case 'n': s.append('\n'); break;
+				case 'r': s.append('\r'); break;
+				case 't': s.append('\t'); break;
+				case 'u':
+					if (this.pos + 4 > this.text.length())
+						throw error("Truncated \\u escape");
+					try {
+						s.append((char) Integer.parseInt(this.text.substring(this.pos, this.pos + 4), 16));
+					} catch (NumberFormatException e) {
+						throw error("Bad \\u escape");
+					}
+					this.pos += 4;
+					break;
+				default:
+					throw error("Bad escape \\" + escape);
+			}
+		}
+	}
+
+	private Number number() {
+		int start = this.pos;
+		while (this.pos < this.text.length() && "+-0123456789.eE".indexOf(this.text.charAt(this.pos)) >= 0)
+			this.pos++;
+		String s = this.text.substring(start, this.pos);
+		try {
+			if (s.indexOf('.') < 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0)
+				return Long.valueOf(s);
+			return Double.valueOf(s);
+		} catch (NumberFormatException e) {
+			throw error("Bad number " + s);
+		}
+	}
+
+	// the next character that is not white space, or 0 at the end
+	private char peek() {
+		while (this.pos < this.text.length() && Character.isWhitespace(this.text.charAt(this.pos)))
+			this.pos++;
+		return this.pos < this.text.length() ? this.text.charAt(this.pos) : 0;
+	}
+
+	private boolean accept(char c) {
+		if (peek() != c)
+			return false;
+		this.pos++;
+		return true;
+	}
+
+	private void expect(char c) {
+		if (!accept(c))
+			throw error("Expected '" + c + "'");
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at offset " + this.pos + " of the JSON body");
+	}
+}//end Json
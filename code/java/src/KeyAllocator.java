@@ -0,0 +1,113 @@
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hi-lo primary key allocator.  Each sequence in code/sql/sequences.sql
+ * increments by BLOCK_SIZE, so one nextval reserves a whole block of ids
+ * for this process; ids inside the block are handed out from an in-memory
+ * counter.  Only the first id of each block costs a round trip, and two
+ * agents can never be given the same id because their blocks never overlap.
+ *
+ * Ids skipped when the process exits are simply never used.
+ *
+ */
+
+public class KeyAllocator {
+	// must match INCREMENT BY in code/sql/sequences.sql
+	public static final int BLOCK_SIZE = 1000;
+
+	public static final String PLANE = "plane_id_seq";
+	public static final String PILOT = "pilot_id_seq";
+	public static final String TECHNICIAN = "technician_id_seq";
+	public static final String FLIGHT = "flight_fnum_seq";
+	public static final String FLIGHT_INFO = "flightinfo_fiid_seq";
+	public static final String RESERVATION = "reservation_rnum_seq";
+	public static final String REPAIR = "repairs_rid_seq";
+
+	// each sequence with the table and key column it numbers
+	static final String[][] SEQUENCES = {
+		{ PLANE, "Plane", "id" },
+		{ PILOT, "Pilot", "id" },
+		{ TECHNICIAN, "Technician", "id" },
+		{ FLIGHT, "Flight", "fnum" },
+		{ FLIGHT_INFO, "FlightInfo", "fiid" },
+		{ RESERVATION, "Reservation", "rnum" },
+		{ REPAIR, "Repairs", "rid" },
+	};
+
+	private final DBproject esql;
+	private final ConcurrentHashMap<String, Allocation> allocations = new ConcurrentHashMap<String, Allocation>();
+
+	public KeyAllocator(DBproject esql) {
+		this.esql = esql;
+	}
+
+	/**
+	 * Method to hand out the next unused key of a table.
+	 *
+	 * @param sequence one of the sequence names above
+	 * @return a key no other caller, in this or another process, receives
+	 * @throws java.sql.SQLException when a new block cannot be reserved
+	 */
+	public int next(String sequence) throws SQLException {
+		Allocation allocation = this.allocations.get(sequence);
+		if (allocation == null) {
+			this.allocations.putIfAbsent(sequence, new Allocation(sequence));
+			allocation = this.allocations.get(sequence);
+		}
+		return allocation.next();
+	}
+
+	/**
+	 * Method to move every sequence past the largest key in its table and
+	 * forget the blocks held in memory, for use after rows were loaded
+	 * without going through the allocator.
+	 *
+	 * @throws java.sql.SQLException when a sequence cannot be reset
+	 */
+	public void resync() throws SQLException {
+		for (String[] seq : SEQUENCES)
+			this.esql.executeQuery("SELECT setval(CAST(? AS regclass), (SELECT COALESCE(MAX(" + seq[2] + "), -1) + 1 FROM "
+				+ seq[1] + "), false);", seq[0]);
+		this.allocations.clear();
+	}
+
+	// the block of one sequence currently being handed out
+	private static final class Block {
+		final AtomicLong next;
+		final long limit;
+
+		Block(long start, long limit) {
+			this.next = new AtomicLong(start);
+			this.limit = limit;
+		}
+	}
+
+	private final class Allocation {
+		private final String sequence;
+		// starts exhausted so that the first call reserves a block
+		private volatile Block block = new Block(0, 0);
+
+		Allocation(String sequence) {
+			this.sequence = sequence;
+		}
+
+		int next() throws SQLException {
+			while (true) {
+				Block current = this.block;
+				long id = current.next.getAndIncrement();
+				if (id < current.limit)
+					return (int) id;
+				synchronized (this) {
+					// another thread may have refilled while we waited
+					if (this.block == current) {
+						long start = esql.executeQueryAndReturnTable(
+							"SELECT nextval(CAST(? AS regclass));", this.sequence).getLong(0, 0);
+						this.block = new Block(start, start + BLOCK_SIZE);
+					}
+				}
+			}
+		}
+	}
+}//end KeyAllocator
@@ -0,0 +1,170 @@
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size latency histogram in nanoseconds.  Every power of two is split
+ * into SUB_BUCKETS linear buckets, so a recorded value is kept to within
+ * about 3% whatever its magnitude, in constant memory.  Recording is lock
+ * free and may be done from many threads at once.
+ *
+ */
+
+public class LatencyHistogram {
+	static final int SUB_BUCKET_BITS = 5;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// enough buckets for any positive long
+	static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Method to record one latency.
+	 *
+	 * @param nanos the latency in nanoseconds, negative values count as 0
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		this.counts.incrementAndGet(index(nanos));
+		this.count.incrementAndGet();
+		this.total.addAndGet(nanos);
+		long seen;
+		while (nanos > (seen = this.max.get()) && !this.max.compareAndSet(seen, nanos))
+			;
+	}
+
+	/**
+	 * Method to add every latency recorded by another histogram.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; ++i) {
+			long n = other.counts.get(i);
+			if (n != 0)
+				this.counts.addAndGet(i, n);
+		}
+		this.count.addAndGet(other.count.get());
+		this.total.addAndGet(other.total.get());
+		long seen;
+		long otherMax = other.max.get();
+		while (otherMax > (seen = this.max.get()) && !this.max.compareAndSet(seen, otherMax))
+			;
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; ++i)
+			this.counts.set(i, 0);
+		this.count.set(0);
+		this.total.set(0);
+		this.max.set(0);
+	}
+
+	public long getCount() {
+		return this.count.get();
+	}
+
+	public long getMaxNanos() {
+		return this.max.get();
+	}
+
+	public double getMeanNanos() {
+		long n = this.count.get();
+		return n == 0 ? 0 : this.total.get() / (double) n;
+	}
+
+	/**
+	 * Method to estimate a percentile.
+	 *
+	 * @param percent between 0 and 100, such as 99.9
+	 * @return the largest value of the bucket holding that percentile, in
+	 *   nanoseconds, or 0 when nothing was recorded
+	 */
+	public long getPercentileNanos(double percent) {
+		long n = this.count.get();
+		if (n == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(n * percent / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			seen += this.counts.get(i);
+			if (seen >= rank)
+				return Math.min(highestValue(i), this.max.get());
+		}
+		return this.max.get();
+	}
+
+	/**
+	 * Method to format the count, mean and main percentiles in microseconds,
+	 * tab separated in the order of summaryHeader.
+	 */
+	public String summary() {
+		return getCount()
+			+ "\t" + String.format("%.1f", getMeanNanos() / 1000.0)
+			+ "\t" + String.format("%.1f", getPercentileNanos(50) / 1000.0)
+			+ "\t" + String.format("%.1f", getPercentileNanos(90) / 1000.0)
+			+ "\t" + String.format("%.1f", getPercentileNanos(99) / 1000.0)
+			+ "\t" + String.format("%.1f", getPercentileNanos(99.9) / 1000.0)
+			+ "\t" + String.format("%.1f", getMaxNanos() / 1000.0);
+	}
+
+	public static String summaryHeader() {
+		return "calls\tmean_us\tp50_us\tp90_us\tp99_us\tp99.9_us\tmax_us";
+	}
+
+	/**
+	 * Method to print the distribution as one bar per power of two
+	 * microseconds, scaled so that the fullest bar is width characters.
+	 */
+	public void printDistribution(PrintStream out, int width) {
+		// fold the fine buckets into powers of two of microseconds
+		long[] bins = new long[64];
+		int first = 64, last = -1;
+		for (int i = 0; i < BUCKETS; ++i) {
+			long n = this.counts.get(i);
+			if (n == 0)
+				continue;
+			long micros = lowestValue(i) / 1000;
+			int bin = micros == 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+			bins[bin] += n;
+			first = Math.min(first, bin);
+			last = Math.max(last, bin);
+		}
+		long fullest = 0;
+		for (long n : bins)
+			fullest = Math.max(fullest, n);
+		for (int bin = first; bin <= last; ++bin) {
+			long upper = 1L << bin;
+			StringBuilder bar = new StringBuilder();
+			for (long c = bins[bin] * width / fullest; c > 0; --c)
+				bar.append('#');
+			out.println(String.format("  < %8d us %9d %s", upper, bins[bin], bar));
+		}
+	}
+
+	static int index(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		// the top SUB_BUCKET_BITS + 1 bits, between SUB_BUCKETS and 2 * SUB_BUCKETS - 1
+		int top = (int) (value >>> shift);
+		return (shift + 1) * SUB_BUCKETS + (top - SUB_BUCKETS);
+	}
+
+	static long lowestValue(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int shift = index / SUB_BUCKETS - 1;
+		return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+	}
+
+	static long highestValue(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int shift = index / SUB_BUCKETS - 1;
+		return lowestValue(index) + (1L << shift) - 1;
+	}
+}//end LatencyHistogram
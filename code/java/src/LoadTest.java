@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test client for ApiServer.  At each concurrency level, that many
+ * threads send requests back to back for the given time, alternating the
+ * seats lookup of option 6 and the passenger count of option 9 for one
+ * flight, and the latencies of the level are reported.  Only reads are
+ * sent, so the database is left as it was.
+ *
+ * Usage: java -cp bin/ LoadTest <base url> <fnum> <yyyy-mm-dd> [max concurrency] [seconds]
+ *
+ *	java -cp bin/ LoadTest http://localhost:8080 120 2015-03-23 256 10
+ *
+ */
+
+public class LoadTest {
+	static final int DEFAULT_MAX_CONCURRENCY = 256;
+	static final int DEFAULT_SECONDS = 10;
+	// requests each thread sends before its latencies are recorded
+	static final int WARMUP = 100;
+
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.err.println(
+				"Usage: java [-classpath <classpath>] " + LoadTest.class.getName() +
+				" <base url> <fnum> <yyyy-mm-dd> [max concurrency] [seconds]");
+			return;
+		}//end if
+
+		String base = args[0].replaceAll("/+$", "");
+		int fnum = Integer.parseInt(args[1]);
+		java.sql.Date date = java.sql.Date.valueOf(args[2]);
+		int maxConcurrency = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_MAX_CONCURRENCY;
+		int seconds = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_SECONDS;
+		// keep connections alive for as many threads as send requests
+		System.setProperty("http.maxConnections", String.valueOf(maxConcurrency));
+
+		try {
+			final String[] urls = {
+				base + "/flights/" + fnum + "/seats?date=" + date,
+				base + "/flights/" + fnum + "/passengers?status=R",
+			};
+			// fails fast when the server is down or the flight does not exist
+			for (String url : urls)
+				if (send(url) != 200)
+					throw new IOException(url + " did not answer 200");
+
+			System.out.println("concurrency\t" + LatencyHistogram.summaryHeader() + "\trequests_per_sec\terrors");
+			for (int concurrency = 1; concurrency <= maxConcurrency; concurrency *= 2)
+				runLevel(urls, concurrency, seconds);
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		}
+	}
+
+	static void runLevel(final String[] urls, int concurrency, int seconds) throws InterruptedException {
+		final LatencyHistogram latencies = new LatencyHistogram();
+		final AtomicLong errors = new AtomicLong();
+		// every answered request, including the warm up ones the latencies skip,
+		// since all of them fall in the time the throughput is divided by
+		final AtomicLong answered = new AtomicLong();
+		final long begin = System.nanoTime();
+		final long deadline = begin + seconds * 1000000000L;
+		Thread[] clients = new Thread[concurrency];
+		for (int t = 0; t < concurrency; ++t) {
+			final int offset = t;
+			clients[t] = new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; System.nanoTime() < deadline; ++i) {
+						String url = urls[(offset + i) % urls.length];
+						long start = System.nanoTime();
+						try {
+							if (send(url) != 200) {
+								errors.incrementAndGet();
+								continue;
+							}
+							answered.incrementAndGet();
+							if (i >= WARMUP)
+								latencies.record(System.nanoTime() - start);
+						} catch (IOException e) {
+							errors.incrementAndGet();
+						}
+					}
+				}
+			});
+			clients[t].start();
+		}
+		for (Thread client : clients)
+			client.join();
+		double elapsed = (System.nanoTime() - begin) / 1e9;
+		System.out.println(concurrency + "\t" + latencies.summary()
+			+ "\t" + String.format("%.0f", answered.get() / elapsed) + "\t" + errors.get());
+	}
+
+	// sends a GET and reads the whole response, so the connection is reused
+	static int send(String url) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+		int status = conn.getResponseCode();
+		InputStream body = status < 400 ? conn.getInputStream() : conn.getErrorStream();
+		if (body != null) {
+			byte[] buffer = new byte[4096];
+			while (body.read(buffer) > 0)
+				;
+			body.close();
+		}
+		return status;
+	}
+}//end LoadTest
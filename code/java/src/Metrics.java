@@ -0,0 +1,244 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide latency and round trip counts.  DBproject records the time
+ * of every statement under its SQL text, its shape, since parameters are
+ * bound separately.  Operations, a menu choice, a batch command or an API
+ * request, are timed between begin and end, and every statement prepared
+ * on the operation's thread in between counts as one round trip of it,
+ * as do the extra fetches of a streamed result and explicit commits.
+ * AsyncExecutor carries the operation over to its worker threads.
+ *
+ * Time the menu spends waiting for the user to type is left out of an
+ * operation's latency.  Operations do not nest: begin inside an operation
+ * is ignored, so BookFlight calling AddFlight counts as BookFlight only.
+ *
+ * Recording is lock free apart from the first time a shape or operation is
+ * seen.  Each operation is also a dbproject.Operation Flight Recorder event,
+ * and each statement a dbproject.Statement event.
+ *
+ */
+
+public class Metrics {
+	// characters of a SQL shape shown on the console; the dump keeps all
+	static final int SHAPE_WIDTH = 100;
+
+	private static final Map<String, LatencyHistogram> STATEMENTS = new ConcurrentHashMap<String, LatencyHistogram>();
+	private static final Map<String, Stats> OPERATIONS = new ConcurrentHashMap<String, Stats>();
+	private static final ThreadLocal<Operation> CURRENT = new ThreadLocal<Operation>();
+
+	private Metrics() {
+	}
+
+	/**
+	 * Method to start timing an operation on this thread.
+	 *
+	 * @param name the operation, such as BookFlight
+	 * @return the operation to pass to end, or null when one is already
+	 *   running on this thread
+	 */
+	public static Operation begin(String name) {
+		if (CURRENT.get() != null)
+			return null;
+		Operation operation = new Operation(name);
+		CURRENT.set(operation);
+		return operation;
+	}
+
+	/**
+	 * Method to stop timing an operation and record its latency and round
+	 * trips.  Does nothing for the null of a nested begin.
+	 */
+	public static void end(Operation operation) {
+		if (operation == null)
+			return;
+		CURRENT.remove();
+		long nanos = System.nanoTime() - operation.start - operation.inputWait;
+		operation.event.end();
+		if (operation.event.shouldCommit()) {
+			operation.event.operation = operation.name;
+			operation.event.roundTrips = operation.roundTrips.get();
+			operation.event.inputWait = operation.inputWait;
+			operation.event.commit();
+		}
+		Stats stats = OPERATIONS.get(operation.name);
+		if (stats == null) {
+			OPERATIONS.putIfAbsent(operation.name, new Stats());
+			stats = OPERATIONS.get(operation.name);
+		}
+		stats.record(nanos, operation.roundTrips.get());
+	}
+
+	// the operation running on this thread, or null
+	static Operation current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Method to count this thread's work toward another thread's operation,
+	 * or toward none for null.
+	 *
+	 * @return the operation this thread counted toward before
+	 */
+	static Operation attach(Operation operation) {
+		Operation previous = CURRENT.get();
+		if (operation == null)
+			CURRENT.remove();
+		else
+			CURRENT.set(operation);
+		return previous;
+	}
+
+	/**
+	 * Method to count round trips toward the operation on this thread.
+	 */
+	public static void roundTrips(int count) {
+		roundTrips(CURRENT.get(), count);
+	}
+
+	/**
+	 * Method to count round trips toward an operation running on another
+	 * thread, or toward none for null.
+	 */
+	static void roundTrips(Operation operation, int count) {
+		if (operation != null)
+			operation.roundTrips.addAndGet(count);
+	}
+
+	/**
+	 * Method to record the time of one statement.
+	 *
+	 * @param sql the SQL text with ? placeholders
+	 */
+	public static void statement(String sql, long nanos) {
+		LatencyHistogram histogram = STATEMENTS.get(sql);
+		if (histogram == null) {
+			STATEMENTS.putIfAbsent(sql, new LatencyHistogram());
+			histogram = STATEMENTS.get(sql);
+		}
+		histogram.record(nanos);
+	}
+
+	/**
+	 * Method to leave time spent waiting for input out of the operation on
+	 * this thread.
+	 */
+	public static void inputWait(long nanos) {
+		Operation operation = CURRENT.get();
+		if (operation != null)
+			operation.inputWait += nanos;
+	}
+
+	public static void reset() {
+		STATEMENTS.clear();
+		OPERATIONS.clear();
+	}
+
+	/**
+	 * Method to print the operations by name and the statements by total
+	 * time, most expensive first.
+	 *
+	 * @param out where to print
+	 * @param shapeWidth characters of each SQL shape to print, 0 for all
+	 */
+	public static void print(PrintStream out, int shapeWidth) {
+		List<String> names = new ArrayList<String>(OPERATIONS.keySet());
+		Collections.sort(names);
+		out.println("operation\t" + header() + "\tround_trips_per_call\tmax_round_trips");
+		for (String name : names) {
+			Stats stats = OPERATIONS.get(name);
+			long calls = stats.latency.getCount();
+			out.println(name + "\t" + summary(stats.latency)
+				+ "\t" + String.format("%.1f", calls == 0 ? 0 : stats.roundTrips.get() / (double) calls)
+				+ "\t" + stats.maxRoundTrips.get());
+		}
+
+		List<Map.Entry<String, LatencyHistogram>> shapes =
+			new ArrayList<Map.Entry<String, LatencyHistogram>>(STATEMENTS.entrySet());
+		Collections.sort(shapes, new Comparator<Map.Entry<String, LatencyHistogram>>() {
+			public int compare(Map.Entry<String, LatencyHistogram> a, Map.Entry<String, LatencyHistogram> b) {
+				return Double.compare(total(b.getValue()), total(a.getValue()));
+			}
+		});
+		out.println();
+		out.println(header() + "\ttotal_ms\tstatement");
+		for (Map.Entry<String, LatencyHistogram> shape : shapes) {
+			String sql = shape.getKey().replaceAll("\\s+", " ").trim();
+			if (shapeWidth > 0 && sql.length() > shapeWidth)
+				sql = sql.substring(0, shapeWidth - 3) + "...";
+			out.println(summary(shape.getValue())
+				+ "\t" + String.format("%.1f", total(shape.getValue()) / 1e6) + "\t" + sql);
+		}
+	}
+
+	/**
+	 * Method to write everything print shows, with whole SQL shapes, to a file.
+	 *
+	 * @throws java.io.IOException when the file cannot be written
+	 */
+	public static void dump(String path) throws IOException {
+		PrintStream out = new PrintStream(new FileOutputStream(path), false, "UTF-8");
+		try {
+			print(out, 0);
+		} finally {
+			out.close();
+		}
+		if (out.checkError())
+			throw new IOException("Could not write " + path);
+	}
+
+	static String header() {
+		return "calls\tmean_us\tp50_us\tp95_us\tp99_us\tmax_us";
+	}
+
+	static String summary(LatencyHistogram histogram) {
+		return histogram.getCount()
+			+ "\t" + String.format("%.1f", histogram.getMeanNanos() / 1000.0)
+			+ "\t" + String.format("%.1f", histogram.getPercentileNanos(50) / 1000.0)
+			+ "\t" + String.format("%.1f", histogram.getPercentileNanos(95) / 1000.0)
+			+ "\t" + String.format("%.1f", histogram.getPercentileNanos(99) / 1000.0)
+			+ "\t" + String.format("%.1f", histogram.getMaxNanos() / 1000.0);
+	}
+
+	private static double total(LatencyHistogram histogram) {
+		return histogram.getMeanNanos() * histogram.getCount();
+	}
+
+	// one running operation; the round trips may be counted from other threads
+	static final class Operation {
+		final String name;
+		final long start = System.nanoTime();
+		final AtomicLong roundTrips = new AtomicLong();
+		// only touched by the thread that began the operation
+		long inputWait = 0;
+		final OperationEvent event = new OperationEvent();
+
+		Operation(String name) {
+			this.name = name;
+			this.event.begin();
+		}
+	}
+
+	private static final class Stats {
+		final LatencyHistogram latency = new LatencyHistogram();
+		final AtomicLong roundTrips = new AtomicLong();
+		final AtomicLong maxRoundTrips = new AtomicLong();
+
+		void record(long nanos, long roundTrips) {
+			this.latency.record(nanos);
+			this.roundTrips.addAndGet(roundTrips);
+			long seen;
+			while (roundTrips > (seen = this.maxRoundTrips.get()) && !this.maxRoundTrips.compareAndSet(seen, roundTrips))
+				;
+		}
+	}
+}//end Metrics
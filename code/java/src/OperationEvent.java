@@ -0,0 +1,35 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for one operation timed by Metrics: a menu choice
+ * such as AddPlane or BookFlight, a batch command or an API request.  The
+ * dbproject.Statement events on the same thread within it are its
+ * statements, so a stall in a recording can be traced to the operation
+ * that suffered it.
+ *
+ */
+
+@Name("dbproject.Operation")
+@Label("DBproject Operation")
+@Category("DBproject")
+@Description("A menu operation, batch command or API request")
+@StackTrace(false)
+public class OperationEvent extends Event {
+	@Label("Operation")
+	String operation;
+
+	@Label("Round Trips")
+	@Description("Statements, cursor fetches and commits sent to the database")
+	long roundTrips;
+
+	@Label("Input Wait")
+	@Description("Time spent waiting for the user to type, included in the duration")
+	@Timespan(Timespan.NANOSECONDS)
+	long inputWait;
+}//end OperationEvent
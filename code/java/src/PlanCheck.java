@@ -0,0 +1,242 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Plan regression check for the menu queries.  Inside one transaction that
+ * is rolled back at the end, every table is copied scale times over, with
+ * keys shifted so that foreign keys still match and dates spread out, and
+ * analyzed; then each menu query is run through EXPLAIN (FORMAT JSON) with
+ * sample parameters.  A sequential scan in the plan of a hot path, a query
+ * that touches a handful of rows, fails the check; the reports that read
+ * whole tables are listed but may scan.
+ *
+ * Usage: java -cp lib/*:bin/ PlanCheck <dbname> <port> <user> [scale]
+ *
+ * Exits with status 1 when a hot path scans, so it can gate schema changes
+ * such as code/sql/indexes.sql.
+ *
+ */
+
+public class PlanCheck {
+	static final int DEFAULT_SCALE = 50;
+	static final int MAX_SCALE = 200;
+	// added to every key of the n-th copy times n; larger than any real key
+	static final int KEY_STRIDE = 10000000;
+
+	// the key and foreign key columns of each table, shifted in the copies
+	static final String[][] KEYS = {
+		{ "Customer", "id" },
+		{ "Pilot", "id" },
+		{ "Plane", "id" },
+		{ "Technician", "id" },
+		{ "Flight", "fnum" },
+		{ "Reservation", "rnum", "cid", "fid" },
+		{ "FlightInfo", "fiid", "flight_id", "pilot_id", "plane_id" },
+		{ "Repairs", "rid", "pilot_id", "plane_id", "technician_id" },
+		{ "Schedule", "id", "flightNum" },
+	};
+	// date columns moved by a day per copy, so dates stay selective
+	static final List<String> SPREAD_DATES = Arrays.asList(
+		"actual_departure_date", "actual_arrival_date", "repair_date", "departure_time", "arrival_time");
+
+	// a sequential scan node and the table it reads; a node's fields come
+	// before its child plans, so no brace lies between the two
+	static final Pattern SEQ_SCAN = Pattern.compile("\"Node Type\": \"Seq Scan\",[^{}]*?\"Relation Name\": \"(\\w+)\"");
+
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.err.println(
+				"Usage: java [-classpath <classpath>] " + PlanCheck.class.getName() +
+				" <dbname> <port> <user> [scale]");
+			return;
+		}//end if
+
+		int scale = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_SCALE;
+		if (scale < 0 || scale > MAX_SCALE) {
+			System.err.println("scale must be between 0 and " + MAX_SCALE);
+			System.exit(2);
+		}
+
+		DBproject esql = null;
+		boolean passed = false;
+		try {
+			Class.forName("org.postgresql.Driver");
+			// one connection holds the transaction, the other reads samples
+			esql = new DBproject(args[0], args[1], args[2], "", 1, 2);
+			passed = check(esql, scale);
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		} finally {
+			if (esql != null)
+				esql.cleanup();
+		}
+		System.out.println(passed ? "PASS" : "FAIL");
+		System.exit(passed ? 0 : 1);
+	}
+
+	/**
+	 * Method to scale the data up, explain every menu query and report the
+	 * tables each scans sequentially.  Nothing is left in the database.
+	 *
+	 * @return true when no hot path scans a table
+	 * @throws java.sql.SQLException when the data cannot be copied or a query explained
+	 */
+	static boolean check(DBproject esql, int scale) throws SQLException {
+		PooledConnection conn = esql.borrowConnection();
+		Connection raw = conn.getConnection();
+		try {
+			raw.setAutoCommit(false);
+
+			// sample parameters from the real rows, before they are copied
+			ResultTable flight = esql.executeQueryAndReturnTable("SELECT F.fnum, F.actual_departure_date"
+				+ " FROM Flight F, FlightInfo FI WHERE FI.flight_id = F.fnum ORDER BY F.fnum LIMIT 3;");
+			ResultTable booking = esql.executeQueryAndReturnTable("SELECT R.cid, R.fid FROM Reservation R LIMIT 1;");
+			ResultTable plane = esql.executeQueryAndReturnTable("SELECT MIN(id) FROM Plane;");
+			ResultTable pilot = esql.executeQueryAndReturnTable("SELECT MIN(id) FROM Pilot;");
+			if (flight.getRowCount() == 0 || booking.getRowCount() == 0)
+				throw new SQLException("PlanCheck needs at least one flight with a plane and one reservation");
+			int fnum = flight.getInt(0, 0);
+			java.sql.Date date = java.sql.Date.valueOf(java.time.LocalDate.ofEpochDay(flight.getEpochDay(0, 1)));
+			java.sql.Date weekLater = java.sql.Date.valueOf(date.toLocalDate().plusDays(7));
+			StringBuilder fnums = new StringBuilder("{");
+			for (int i = 0; i < flight.getRowCount(); ++i)
+				fnums.append(i == 0 ? "" : ",").append(flight.getInt(i, 0));
+			fnums.append('}');
+			int cid = booking.getInt(0, 0);
+
+			long start = System.nanoTime();
+			scaleUp(conn, scale);
+			System.out.println(String.format("Copied every table %d times in %.1f s", scale,
+				(System.nanoTime() - start) / 1e9));
+
+			List<Check> checks = new ArrayList<Check>();
+			checks.add(new Check("6  available seats", true, AvailabilityCache.QUERY, fnum, date));
+			checks.add(new Check("11 available seats by date", true, AvailabilityCache.BY_DATE, date, weekLater));
+			checks.add(new Check("11 available seats by flights", true, AvailabilityCache.BY_FLIGHTS, fnums.toString()));
+			checks.add(new Check("5  booking lookup", true,
+				"SELECT (SELECT R.status FROM Reservation R WHERE R.cid=? AND R.fid=? LIMIT 1),"
+				+ " (SELECT COUNT(*) FROM Flight F WHERE F.fnum=?),"
+				+ " (SELECT COUNT(*) FROM Customer C WHERE C.id=?);", cid, fnum, fnum, cid));
+			checks.add(new Check("5  book_flight reservation", true,
+				"SELECT rnum, status FROM Reservation WHERE cid = ? AND fid = ? ORDER BY rnum LIMIT 1;", cid, fnum));
+			checks.add(new Check("5  book_flight seat capacity", true,
+				"SELECT MIN(P.seats) FROM FlightInfo FI, Plane P WHERE FI.flight_id = ? AND P.id = FI.plane_id;", fnum));
+			checks.add(new Check("3  plane and pilot exist", true,
+				"SELECT (SELECT COUNT(*) FROM Plane WHERE id = ?), (SELECT COUNT(*) FROM Pilot WHERE id = ?);",
+				plane.getInt(0, 0), pilot.getInt(0, 0)));
+			checks.add(new Check("   reservations of a customer", true,
+				"SELECT * FROM Reservation WHERE cid = ?;", cid));
+			checks.add(new Check("   repairs of a plane", true,
+				"SELECT * FROM Repairs WHERE plane_id = ?;", plane.getInt(0, 0)));
+			if (exists(esql, "RepairsPerPlane")) {
+				checks.add(new Check("7  repairs per plane", false, RepairRollups.PER_PLANE));
+				checks.add(new Check("8  repairs per year", false, RepairRollups.PER_YEAR));
+			} else {
+				System.out.println("RepairsPerPlane does not exist, run code/sql/repair_rollups.sql to check options 7 and 8");
+			}
+			if (exists(esql, "FlightStatusCount")) {
+				checks.add(new Check("9  passengers with status", true, DBproject.STATUS_COUNT, "R", fnum));
+				checks.add(new Check("12 status counts of all flights", false,
+					"SELECT F.fnum, F.actual_departure_date, COALESCE(S.waitlisted, 0) AS waitlisted,"
+					+ " COALESCE(S.confirmed, 0) AS confirmed, COALESCE(S.reserved, 0) AS reserved"
+					+ " FROM Flight F LEFT JOIN FlightStatusCount S ON S.fid = F.fnum ORDER BY F.fnum"));
+			} else {
+				System.out.println("FlightStatusCount does not exist, run code/sql/status_counts.sql to check option 9");
+			}
+
+			boolean passed = true;
+			System.out.println("query\tpath\tseq_scans\tresult");
+			for (Check check : checks) {
+				List<String> scans = seqScans(conn, check);
+				boolean failed = check.hot && !scans.isEmpty();
+				passed &= !failed;
+				System.out.println(check.name + "\t" + (check.hot ? "hot" : "report")
+					+ "\t" + (scans.isEmpty() ? "-" : String.join(",", scans))
+					+ "\t" + (failed ? "FAIL" : "ok"));
+			}
+			return passed;
+		} finally {
+			// drops the copies and their statistics
+			raw.rollback();
+			esql.releaseConnection(conn);
+		}
+	}
+
+	/*
+	 * Inserts scale copies of every table, parents first, shifting the keys
+	 * of the n-th copy by n * KEY_STRIDE so that its foreign keys point at
+	 * the n-th copy of the parent rows, then analyzes the table.
+	 */
+	static void scaleUp(PooledConnection conn, int scale) throws SQLException {
+		for (AirlineSchema.Table table : AirlineSchema.TABLES) {
+			List<String> keys = Arrays.asList(keysOf(table.name));
+			ResultSet rs = DBproject.prepare(conn, "SELECT COALESCE(MAX(" + keys.get(0) + "), 0) FROM " + table.name + ";")
+				.executeQuery();
+			rs.next();
+			if (rs.getLong(1) >= KEY_STRIDE)
+				throw new SQLException(table.name + " has keys above " + KEY_STRIDE + ", too large to copy");
+			rs.close();
+
+			StringBuilder select = new StringBuilder();
+			for (int i = 0; i < table.columns.length; ++i) {
+				String column = table.columns[i];
+				select.append(i == 0 ? "" : ", ");
+				if (keys.contains(column))
+					select.append(column).append(" + G * ").append(KEY_STRIDE);
+				else if (SPREAD_DATES.contains(column))
+					select.append(column).append(" + G");
+				else
+					select.append(column);
+			}
+			DBproject.prepare(conn, "INSERT INTO " + table.target() + " SELECT " + select
+				+ " FROM " + table.name + ", generate_series(1, ?) G;", scale).executeUpdate();
+			DBproject.prepare(conn, "ANALYZE " + table.name + ";").executeUpdate();
+		}
+	}
+
+	static String[] keysOf(String table) {
+		for (String[] keys : KEYS)
+			if (keys[0].equals(table))
+				return Arrays.copyOfRange(keys, 1, keys.length);
+		throw new IllegalArgumentException("No keys known for " + table);
+	}
+
+	// returns the tables the plan of a query reads with a sequential scan
+	static List<String> seqScans(PooledConnection conn, Check check) throws SQLException {
+		ResultSet rs = DBproject.prepare(conn, "EXPLAIN (FORMAT JSON) " + check.sql, check.params).executeQuery();
+		StringBuilder plan = new StringBuilder();
+		while (rs.next())
+			plan.append(rs.getString(1));
+		rs.close();
+		List<String> tables = new ArrayList<String>();
+		Matcher m = SEQ_SCAN.matcher(plan);
+		while (m.find())
+			tables.add(m.group(1));
+		return tables;
+	}
+
+	static boolean exists(DBproject esql, String table) throws SQLException {
+		return !esql.executeQueryAndReturnTable("SELECT to_regclass(?);", table).isNull(0, 0);
+	}
+
+	// a menu query with the parameters it is explained with
+	static final class Check {
+		final String name;
+		final boolean hot;
+		final String sql;
+		final Object[] params;
+
+		Check(String name, boolean hot, String sql, Object... params) {
+			this.name = name;
+			this.hot = hot;
+			this.sql = sql;
+			this.params = params;
+		}
+	}
+}//end PlanCheck
@@ -0,0 +1,77 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * A physical connection owned by a ConnectionPool together with its
+ * prepared statement cache and the bookkeeping the pool needs to validate
+ * and evict it.
+ *
+ */
+
+public class PooledConnection {
+	private final Connection connection;
+	private final StatementCache statements;
+	private volatile long lastUsed;
+	private volatile boolean broken = false;
+
+	PooledConnection(Connection connection) {
+		this.connection = connection;
+		this.statements = new StatementCache(connection,
+			Integer.getInteger("dbproject.statementCache.size", StatementCache.DEFAULT_CAPACITY));
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	public Connection getConnection() {
+		return this.connection;
+	}
+
+	/**
+	 * Method to obtain a cached prepared statement for this connection.
+	 *
+	 * @param sql the SQL text with ? placeholders
+	 * @return the statement, owned by the cache
+	 * @throws java.sql.SQLException when the statement cannot be prepared
+	 */
+	public PreparedStatement prepare(String sql) throws SQLException {
+		return this.statements.prepare(sql);
+	}
+
+	public StatementCache getStatementCache() {
+		return this.statements;
+	}
+
+	/**
+	 * Method to inspect a failure raised while using this connection.  SQL
+	 * states of class 08 (connection exception) mean the socket is gone, so
+	 * the pool must close the connection instead of reusing it.
+	 *
+	 * @param e the exception thrown by the driver
+	 */
+	public void checkBroken(SQLException e) {
+		String state = e.getSQLState();
+		if (state != null && state.startsWith("08"))
+			this.broken = true;
+	}
+
+	boolean isBroken() {
+		return this.broken;
+	}
+
+	void touch() {
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	long idleMillis() {
+		return System.currentTimeMillis() - this.lastUsed;
+	}
+
+	void closeQuietly() {
+		this.statements.clear();
+		try {
+			this.connection.close();
+		} catch (SQLException e) {
+			// ignored.
+		}
+	}
+}//end PooledConnection
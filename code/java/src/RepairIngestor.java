@@ -0,0 +1,289 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records repairs with group commit.  Callers from any thread submit
+ * repairs to a queue; one writer thread takes whatever has queued up, up to
+ * MAX_BATCH repairs, and writes them in one transaction with one statement,
+ * so a burst of repairs costs one round trip and one commit per batch
+ * instead of per repair.  Each caller's future completes once its batch has
+ * committed.
+ *
+ * The repair code is checked against the _CODE domain before a repair is
+ * queued.  The plane, pilot and technician are checked by the same statement
+ * that inserts the batch, and only the repairs whose references all exist
+ * are inserted; the others fail on their own without failing the batch.
+ *
+ * The batch statement is recorded like any other DBproject statement, and
+ * counts as one round trip of each operation that has a repair in it.
+ *
+ *	RepairIngestor repairs = esql.getRepairs();
+ *	int rid = repairs.record(java.sql.Date.valueOf("2015-03-23"), "SV", 149, 49, 111);
+ *
+ */
+
+public class RepairIngestor {
+	// the values of the _CODE domain in code/sql/create.sql
+	static final List<String> CODES = Arrays.asList("MJ", "MN", "SV");
+	// largest number of repairs written in one transaction
+	static final int MAX_BATCH = 1000;
+	// how long the writer waits for more repairs once it has one, so that
+	// a slow trickle still forms batches; 0 writes what is queued at once
+	static final long DEFAULT_MAX_DELAY_MICROS = 500;
+
+	// validates and inserts a batch given as one array per column; returns
+	// every repair with whether each of its references exists
+	static final String INSERT_BATCH =
+		"WITH U AS (SELECT * FROM unnest(CAST(? AS INTEGER[]), CAST(? AS DATE[]), CAST(? AS TEXT[]),"
+		+ " CAST(? AS INTEGER[]), CAST(? AS INTEGER[]), CAST(? AS INTEGER[]))"
+		+ " AS U(rid, repair_date, repair_code, pilot_id, plane_id, technician_id)),"
+		+ " V AS (SELECT U.*, EXISTS (SELECT 1 FROM Plane P WHERE P.id = U.plane_id) AS plane_ok,"
+		+ " EXISTS (SELECT 1 FROM Pilot P WHERE P.id = U.pilot_id) AS pilot_ok,"
+		+ " EXISTS (SELECT 1 FROM Technician T WHERE T.id = U.technician_id) AS technician_ok FROM U),"
+		+ " I AS (INSERT INTO Repairs (rid, repair_date, repair_code, pilot_id, plane_id, technician_id)"
+		+ " SELECT rid, repair_date, repair_code, pilot_id, plane_id, technician_id FROM V"
+		+ " WHERE plane_ok AND pilot_ok AND technician_ok)"
+		+ " SELECT rid, plane_ok, pilot_ok, technician_ok FROM V;";
+
+	private final DBproject esql;
+	private final long maxDelayNanos;
+	private final BlockingQueue<Repair> queue = new LinkedBlockingQueue<Repair>();
+	private final Thread writer;
+	private volatile boolean closed = false;
+	private final AtomicLong repairsWritten = new AtomicLong();
+	private final AtomicLong repairsRejected = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+
+	public RepairIngestor(DBproject esql) {
+		this(esql, DEFAULT_MAX_DELAY_MICROS);
+	}
+
+	public RepairIngestor(DBproject esql, long maxDelayMicros) {
+		this.esql = esql;
+		this.maxDelayNanos = maxDelayMicros * 1000L;
+		this.writer = new Thread(new Runnable() {
+			public void run() {
+				writeBatches();
+			}
+		}, "repair-ingestor");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Method to queue a repair for the next batch.
+	 *
+	 * @param date the repair date
+	 * @param code MJ, MN or SV
+	 * @return completes with the repair's rid once it has committed, or
+	 *   exceptionally with a SQLException when it was rejected or its batch failed
+	 * @throws IllegalArgumentException when the code or date is not valid
+	 * @throws IllegalStateException when the ingestor is closed
+	 */
+	public CompletableFuture<Integer> submit(java.sql.Date date, String code, int pilotId, int planeId,
+			int technicianId) {
+		if (date == null)
+			throw new IllegalArgumentException("A repair needs a date");
+		if (!CODES.contains(code))
+			throw new IllegalArgumentException("Repair code must be one of " + CODES + ", got " + code);
+		if (this.closed)
+			throw new IllegalStateException("The repair ingestor is closed");
+		Repair repair = new Repair(date, code, pilotId, planeId, technicianId);
+		this.queue.add(repair);
+		return repair.result;
+	}
+
+	/**
+	 * Method to record a repair and wait until it has committed.
+	 *
+	 * @return the repair's rid
+	 * @throws java.sql.SQLException when the plane, pilot or technician does
+	 *   not exist or the repair could not be written
+	 */
+	public int record(java.sql.Date date, String code, int pilotId, int planeId, int technicianId)
+			throws SQLException {
+		try {
+			return submit(date, code, pilotId, planeId, technicianId).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof SQLException)
+				throw (SQLException) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Method to write every queued repair and stop the writer thread.
+	 */
+	public void close() {
+		this.closed = true;
+		try {
+			this.writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		// anything submitted while the writer was stopping
+		Repair late;
+		while ((late = this.queue.poll()) != null)
+			late.result.completeExceptionally(new SQLException("The repair ingestor is closed"));
+	}
+
+	public long getRepairsWritten() {
+		return this.repairsWritten.get();
+	}
+
+	public long getRepairsRejected() {
+		return this.repairsRejected.get();
+	}
+
+	public long getBatches() {
+		return this.batches.get();
+	}
+
+	public String summary() {
+		long n = this.batches.get();
+		return String.format("%d repairs written, %d rejected, in %d batches (%.1f per batch)",
+			this.repairsWritten.get(), this.repairsRejected.get(), n,
+			n == 0 ? 0 : (this.repairsWritten.get() + this.repairsRejected.get()) / (double) n);
+	}
+
+	private void writeBatches() {
+		List<Repair> batch = new ArrayList<Repair>(MAX_BATCH);
+		while (true) {
+			try {
+				Repair first = this.queue.poll(10, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					// close waits for the queue to drain
+					if (this.closed && this.queue.isEmpty())
+						return;
+					continue;
+				}
+				batch.add(first);
+				this.queue.drainTo(batch, MAX_BATCH - batch.size());
+				long deadline = System.nanoTime() + this.maxDelayNanos;
+				while (batch.size() < MAX_BATCH) {
+					long wait = deadline - System.nanoTime();
+					Repair next = wait > 0 ? this.queue.poll(wait, TimeUnit.NANOSECONDS) : null;
+					if (next == null)
+						break;
+					batch.add(next);
+					this.queue.drainTo(batch, MAX_BATCH - batch.size());
+				}
+			} catch (InterruptedException e) {
+				// finish the batch in hand, then stop
+				this.closed = true;
+			}
+			write(batch);
+			batch.clear();
+		}
+	}
+
+	// inserts one batch in one transaction and completes its futures
+	private void write(List<Repair> batch) {
+		if (batch.isEmpty())
+			return;
+		this.batches.incrementAndGet();
+		PooledConnection conn = null;
+		try {
+			int n = batch.size();
+			StringBuilder rids = new StringBuilder("{"), dates = new StringBuilder("{"), codes = new StringBuilder("{");
+			StringBuilder pilots = new StringBuilder("{"), planes = new StringBuilder("{"), technicians = new StringBuilder("{");
+			for (int i = 0; i < n; ++i) {
+				Repair r = batch.get(i);
+				r.rid = this.esql.nextId(KeyAllocator.REPAIR);
+				String comma = i == 0 ? "" : ",";
+				rids.append(comma).append(r.rid);
+				dates.append(comma).append(r.date);
+				// codes were checked against CODES, so they need no quoting
+				codes.append(comma).append(r.code);
+				pilots.append(comma).append(r.pilotId);
+				planes.append(comma).append(r.planeId);
+				technicians.append(comma).append(r.technicianId);
+			}
+
+			conn = this.esql.borrowConnection();
+			Connection raw = conn.getConnection();
+			raw.setAutoCommit(false);
+			ResultTable checked = this.esql.executeOn(conn, INSERT_BATCH, rids.append('}').toString(),
+				dates.append('}').toString(), codes.append('}').toString(), pilots.append('}').toString(),
+				planes.append('}').toString(), technicians.append('}').toString());
+			// this thread runs no operation, so the callers' are counted here
+			Set<Metrics.Operation> operations = new HashSet<Metrics.Operation>();
+			for (Repair r : batch)
+				if (operations.add(r.operation))
+					Metrics.roundTrips(r.operation, 1);
+			Map<Integer, Repair> byRid = new HashMap<Integer, Repair>();
+			for (Repair r : batch)
+				byRid.put(r.rid, r);
+			for (int i = 0; i < checked.getRowCount(); ++i) {
+				Repair r = byRid.get(checked.getInt(i, 0));
+				// booleans read back as t or f
+				if (!"t".equals(checked.getString(i, 1)))
+					r.rejection = "Plane " + r.planeId + " does not exist";
+				else if (!"t".equals(checked.getString(i, 2)))
+					r.rejection = "Pilot " + r.pilotId + " does not exist";
+				else if (!"t".equals(checked.getString(i, 3)))
+					r.rejection = "Technician " + r.technicianId + " does not exist";
+			}
+			raw.commit();
+
+			for (Repair r : batch) {
+				if (r.rejection == null) {
+					this.repairsWritten.incrementAndGet();
+					r.result.complete(r.rid);
+				} else {
+					this.repairsRejected.incrementAndGet();
+					r.result.completeExceptionally(new SQLException("Repair rejected: " + r.rejection));
+				}
+			}
+		} catch (SQLException e) {
+			if (conn != null)
+				conn.checkBroken(e);
+			for (Repair r : batch)
+				r.result.completeExceptionally(e);
+		} catch (RuntimeException e) {
+			// the writer thread must survive, and no caller may wait forever
+			for (Repair r : batch)
+				r.result.completeExceptionally(e);
+		} finally {
+			// release rolls the transaction back if commit was not reached
+			if (conn != null)
+				this.esql.releaseConnection(conn);
+		}
+	}
+
+	// one queued repair and the future its caller waits on
+	private static final class Repair {
+		final java.sql.Date date;
+		final String code;
+		final int pilotId;
+		final int planeId;
+		final int technicianId;
+		final CompletableFuture<Integer> result = new CompletableFuture<Integer>();
+		// the operation of the thread that submitted the repair, or null
+		final Metrics.Operation operation = Metrics.current();
+		int rid;
+		// why the insert skipped this repair, null when it was inserted
+		String rejection;
+
+		Repair(java.sql.Date date, String code, int pilotId, int planeId, int technicianId) {
+			this.date = date;
+			this.code = code;
+			this.pilotId = pilotId;
+			this.planeId = planeId;
+			this.technicianId = technicianId;
+		}
+	}
+}//end RepairIngestor
@@ -0,0 +1,147 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reports 7 and 8 read from RepairsPerPlane and RepairsPerYear, the repair
+ * totals the repairs_rollup trigger of code/sql/repair_rollups.sql keeps
+ * as repairs are written.  This class holds those report queries and a
+ * consistency checker that compares the rollups with a full recompute from
+ * Repairs, inside one snapshot so that concurrent repairs cannot show up
+ * as differences, and can rebuild them.
+ *
+ * Usage: java -cp lib/*:bin/ RepairRollups <dbname> <port> <user> [--rebuild]
+ *
+ * Exits with status 1 when a rollup differs from the recompute and was not
+ * rebuilt.
+ *
+ */
+
+public class RepairRollups {
+	// report 7: repairs per plane, most repaired first
+	static final String PER_PLANE = "SELECT P.id, P.make, P.model, P.age, P.seats, S.total AS totalRepairs"
+		+ " FROM RepairsPerPlane S, Plane P WHERE S.plane_id = P.id AND S.total > 0"
+		+ " ORDER BY totalRepairs DESC;";
+	// report 8: repairs per year, in year order
+	static final String PER_YEAR = "SELECT S.repair_year, S.total AS totalRepairs"
+		+ " FROM RepairsPerYear S WHERE S.total > 0 ORDER BY S.repair_year ASC;";
+
+	// rows where a stored total differs from the recompute; a missing row and 0 are the same
+	static final String PLANE_DIFFERENCES = "SELECT COALESCE(S.plane_id, A.plane_id) AS plane_id,"
+		+ " COALESCE(S.total, 0) AS stored, COALESCE(A.total, 0) AS actual"
+		+ " FROM RepairsPerPlane S FULL OUTER JOIN"
+		+ " (SELECT plane_id, COUNT(*) AS total FROM Repairs GROUP BY plane_id) A ON A.plane_id = S.plane_id"
+		+ " WHERE COALESCE(S.total, 0) <> COALESCE(A.total, 0) ORDER BY 1;";
+	static final String YEAR_DIFFERENCES = "SELECT COALESCE(S.repair_year, A.repair_year) AS repair_year,"
+		+ " COALESCE(S.total, 0) AS stored, COALESCE(A.total, 0) AS actual"
+		+ " FROM RepairsPerYear S FULL OUTER JOIN"
+		+ " (SELECT CAST(EXTRACT(YEAR FROM repair_date) AS INTEGER) AS repair_year, COUNT(*) AS total"
+		+ " FROM Repairs GROUP BY 1) A ON A.repair_year = S.repair_year"
+		+ " WHERE COALESCE(S.total, 0) <> COALESCE(A.total, 0) ORDER BY 1;";
+
+	private final DBproject esql;
+
+	public RepairRollups(DBproject esql) {
+		this.esql = esql;
+	}
+
+	/**
+	 * Method to compare both rollups with a recompute from Repairs and print
+	 * every total that differs.
+	 *
+	 * @return the number of plane and year totals that differ
+	 * @throws java.sql.SQLException when the tables cannot be read
+	 */
+	public int verify() throws SQLException {
+		PooledConnection conn = this.esql.borrowConnection();
+		try {
+			Connection raw = conn.getConnection();
+			raw.setAutoCommit(false);
+			// one snapshot for the rollups and Repairs, which the trigger
+			// always changes in the same transaction
+			DBproject.prepare(conn, "SET TRANSACTION ISOLATION LEVEL REPEATABLE READ, READ ONLY;").execute();
+			int differences = printDifferences(conn, "plane", PLANE_DIFFERENCES)
+				+ printDifferences(conn, "year", YEAR_DIFFERENCES);
+			raw.commit();
+			return differences;
+		} catch (SQLException e) {
+			conn.checkBroken(e);
+			throw e;
+		} finally {
+			this.esql.releaseConnection(conn);
+		}
+	}
+
+	/**
+	 * Method to recompute both rollups from Repairs.  Repairs are locked
+	 * against writes meanwhile, so no repair is counted twice or missed.
+	 *
+	 * @throws java.sql.SQLException when the rollups cannot be rebuilt
+	 */
+	public void rebuild() throws SQLException {
+		PooledConnection conn = this.esql.borrowConnection();
+		try {
+			Connection raw = conn.getConnection();
+			raw.setAutoCommit(false);
+			DBproject.prepare(conn, "LOCK TABLE Repairs IN SHARE MODE;").execute();
+			DBproject.prepare(conn, "DELETE FROM RepairsPerPlane;").executeUpdate();
+			DBproject.prepare(conn, "DELETE FROM RepairsPerYear;").executeUpdate();
+			DBproject.prepare(conn, "INSERT INTO RepairsPerPlane (plane_id, total)"
+				+ " SELECT plane_id, COUNT(*) FROM Repairs GROUP BY plane_id;").executeUpdate();
+			DBproject.prepare(conn, "INSERT INTO RepairsPerYear (repair_year, total)"
+				+ " SELECT CAST(EXTRACT(YEAR FROM repair_date) AS INTEGER), COUNT(*)"
+				+ " FROM Repairs GROUP BY 1;").executeUpdate();
+			raw.commit();
+		} catch (SQLException e) {
+			conn.checkBroken(e);
+			throw e;
+		} finally {
+			// release rolls back if commit was not reached
+			this.esql.releaseConnection(conn);
+		}
+	}
+
+	private static int printDifferences(PooledConnection conn, String key, String query) throws SQLException {
+		ResultSet rs = DBproject.prepare(conn, query).executeQuery();
+		int differences = 0;
+		while (rs.next()) {
+			if (differences++ == 0)
+				System.out.println(key + "\tstored\tactual");
+			System.out.println(rs.getInt(1) + "\t" + rs.getInt(2) + "\t" + rs.getInt(3));
+		}
+		rs.close();
+		return differences;
+	}
+
+	public static void main(String[] args) {
+		boolean rebuild = args.length == 4 && args[3].equals("--rebuild");
+		if (args.length != 3 && !rebuild) {
+			System.err.println(
+				"Usage: java [-classpath <classpath>] " + RepairRollups.class.getName() +
+				" <dbname> <port> <user> [--rebuild]");
+			return;
+		}//end if
+
+		DBproject esql = null;
+		boolean consistent = false;
+		try {
+			Class.forName("org.postgresql.Driver");
+			esql = new DBproject(args[0], args[1], args[2], "", 1, 1);
+			RepairRollups rollups = new RepairRollups(esql);
+			int differences = rollups.verify();
+			System.out.println(differences + " total(s) differ from a full recompute");
+			consistent = differences == 0;
+			if (!consistent && rebuild) {
+				rollups.rebuild();
+				consistent = rollups.verify() == 0;
+				System.out.println(consistent ? "Rebuilt" : "Still inconsistent after rebuilding");
+			}
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		} finally {
+			if (esql != null)
+				esql.cleanup();
+		}
+		System.exit(consistent ? 0 : 1);
+	}
+}//end RepairRollups
@@ -0,0 +1,42 @@
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Destination for the rows of a query, such as the console or a report
+ * file.  See DBproject.executeQueryAndWrite.
+ *
+ */
+
+public interface ResultSink {
+	/**
+	 * Called once before the first row, and not at all for an empty result.
+	 *
+	 * @param rsmd the metadata of the result
+	 * @throws java.sql.SQLException when the metadata cannot be read
+	 */
+	void header(ResultSetMetaData rsmd) throws SQLException;
+
+	/**
+	 * Called once per row with the result set positioned on it.
+	 *
+	 * @param rs the result set positioned on the current row
+	 * @throws java.sql.SQLException when a column cannot be read
+	 */
+	void row(ResultSet rs) throws SQLException;
+
+	/**
+	 * Called after the last row, also for an empty result.  Anything still
+	 * buffered must be written out here.
+	 *
+	 * @param rowCount the number of rows passed to row
+	 */
+	void end(int rowCount);
+
+	/**
+	 * Called instead of end when the statement fails part way through.
+	 * Anything still buffered must be dropped, so that it does not show
+	 * up in front of the next result written to the same sink.
+	 */
+	void discard();
+}
@@ -0,0 +1,221 @@
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A query result stored column by column with primitive arrays.  INTEGER
+ * columns are kept in an int[], BIGINT columns in a long[], DATE columns in
+ * a long[] of epoch days and CHAR and every other type as trimmed strings,
+ * so reading a number back costs neither a parse nor a boxed value.
+ *
+ * Rows and columns are both numbered from 0.
+ *
+ */
+
+public class ResultTable {
+	static final int KIND_INT = 0;
+	static final int KIND_LONG = 1;
+	static final int KIND_DATE = 2;
+	static final int KIND_TEXT = 3;
+
+	private static final int INITIAL_ROWS = 16;
+
+	private final String[] names;
+	private final int[] kinds;
+	private final boolean[] padded;
+	// one int[], long[] or String[] per column, chosen by kinds
+	private final Object[] columns;
+	private final BitSet[] nulls;
+	private int rowCount = 0;
+
+	private ResultTable(ResultSetMetaData rsmd) throws SQLException {
+		int numCol = rsmd.getColumnCount();
+		this.names = new String[numCol];
+		this.kinds = new int[numCol];
+		this.padded = new boolean[numCol];
+		this.columns = new Object[numCol];
+		this.nulls = new BitSet[numCol];
+		for (int c = 0; c < numCol; ++c) {
+			this.names[c] = rsmd.getColumnName(c + 1);
+			this.nulls[c] = new BitSet();
+			switch (rsmd.getColumnType(c + 1)) {
+				case Types.INTEGER:
+				case Types.SMALLINT:
+				case Types.TINYINT:
+					this.kinds[c] = KIND_INT;
+					this.columns[c] = new int[INITIAL_ROWS];
+					break;
+				case Types.BIGINT:
+					this.kinds[c] = KIND_LONG;
+					this.columns[c] = new long[INITIAL_ROWS];
+					break;
+				case Types.DATE:
+					this.kinds[c] = KIND_DATE;
+					this.columns[c] = new long[INITIAL_ROWS];
+					break;
+				case Types.CHAR:
+				case Types.NCHAR:
+					this.padded[c] = true;
+					this.kinds[c] = KIND_TEXT;
+					this.columns[c] = new String[INITIAL_ROWS];
+					break;
+				default:
+					this.kinds[c] = KIND_TEXT;
+					this.columns[c] = new String[INITIAL_ROWS];
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Method to read every remaining row of a result set into a table.
+	 *
+	 * @param rs the result set, positioned before its first row
+	 * @return the table holding all rows
+	 * @throws java.sql.SQLException when reading the result fails
+	 */
+	public static ResultTable read(ResultSet rs) throws SQLException {
+		ResultTable table = new ResultTable(rs.getMetaData());
+		while (rs.next())
+			table.append(rs);
+		return table;
+	}
+
+	private void append(ResultSet rs) throws SQLException {
+		int row = this.rowCount;
+		if (row == capacity())
+			grow(row * 2);
+		for (int c = 0; c < this.columns.length; ++c) {
+			switch (this.kinds[c]) {
+				case KIND_INT:
+					((int[]) this.columns[c])[row] = rs.getInt(c + 1);
+					break;
+				case KIND_LONG:
+					((long[]) this.columns[c])[row] = rs.getLong(c + 1);
+					break;
+				case KIND_DATE:
+					java.sql.Date date = rs.getDate(c + 1);
+					if (date != null)
+						((long[]) this.columns[c])[row] = date.toLocalDate().toEpochDay();
+					break;
+				default:
+					String text = rs.getString(c + 1);
+					if (text != null && this.padded[c])
+						text = text.trim();
+					((String[]) this.columns[c])[row] = text;
+					break;
+			}
+			if (rs.wasNull())
+				this.nulls[c].set(row);
+		}
+		this.rowCount++;
+	}
+
+	private int capacity() {
+		Object column = this.columns.length == 0 ? null : this.columns[0];
+		if (column instanceof int[])
+			return ((int[]) column).length;
+		if (column instanceof long[])
+			return ((long[]) column).length;
+		if (column instanceof String[])
+			return ((String[]) column).length;
+		return Integer.MAX_VALUE;
+	}
+
+	private void grow(int size) {
+		for (int c = 0; c < this.columns.length; ++c) {
+			Object column = this.columns[c];
+			if (column instanceof int[])
+				this.columns[c] = Arrays.copyOf((int[]) column, size);
+			else if (column instanceof long[])
+				this.columns[c] = Arrays.copyOf((long[]) column, size);
+			else
+				this.columns[c] = Arrays.copyOf((String[]) column, size);
+		}
+	}
+
+	public int getRowCount() {
+		return this.rowCount;
+	}
+
+	public int getColumnCount() {
+		return this.names.length;
+	}
+
+	public String getColumnName(int col) {
+		return this.names[col];
+	}
+
+	/**
+	 * Method to tell whether a column holds INTEGER or BIGINT values.
+	 */
+	public boolean isInteger(int col) {
+		return this.kinds[col] == KIND_INT || this.kinds[col] == KIND_LONG;
+	}
+
+	public boolean isNull(int row, int col) {
+		checkRow(row);
+		return this.nulls[col].get(row);
+	}
+
+	/**
+	 * Method to read an INTEGER column.  A NULL reads as 0, like
+	 * ResultSet.getInt; use isNull to tell them apart.
+	 */
+	public int getInt(int row, int col) {
+		checkRow(row);
+		if (this.kinds[col] != KIND_INT)
+			throw new IllegalArgumentException("Column " + this.names[col] + " is not an INTEGER column");
+		return ((int[]) this.columns[col])[row];
+	}
+
+	/**
+	 * Method to read an INTEGER or BIGINT column, such as a COUNT(*).
+	 */
+	public long getLong(int row, int col) {
+		checkRow(row);
+		if (this.kinds[col] == KIND_INT)
+			return ((int[]) this.columns[col])[row];
+		if (this.kinds[col] != KIND_LONG)
+			throw new IllegalArgumentException("Column " + this.names[col] + " is not an integer column");
+		return ((long[]) this.columns[col])[row];
+	}
+
+	/**
+	 * Method to read a DATE column as days since 1970-01-01.
+	 */
+	public long getEpochDay(int row, int col) {
+		checkRow(row);
+		if (this.kinds[col] != KIND_DATE)
+			throw new IllegalArgumentException("Column " + this.names[col] + " is not a DATE column");
+		return ((long[]) this.columns[col])[row];
+	}
+
+	/**
+	 * Method to read any column as text.  Numbers and dates are formatted
+	 * on each call, CHAR values come back without their blank padding and a
+	 * NULL reads as null.
+	 */
+	public String getString(int row, int col) {
+		if (isNull(row, col))
+			return null;
+		switch (this.kinds[col]) {
+			case KIND_INT:
+				return Integer.toString(((int[]) this.columns[col])[row]);
+			case KIND_LONG:
+				return Long.toString(((long[]) this.columns[col])[row]);
+			case KIND_DATE:
+				return java.time.LocalDate.ofEpochDay(((long[]) this.columns[col])[row]).toString();
+			default:
+				return ((String[]) this.columns[col])[row];
+		}
+	}
+
+	private void checkRow(int row) {
+		if (row < 0 || row >= this.rowCount)
+			throw new IndexOutOfBoundsException("Row " + row + " of " + this.rowCount);
+	}
+}//end ResultTable
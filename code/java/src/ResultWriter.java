@@ -0,0 +1,212 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * A ResultSink that formats rows as TSV, CSV or an aligned table into one
+ * reusable character buffer and writes it to the output stream only when
+ * the buffer fills, so printing a large report costs a write per chunk
+ * rather than one per cell.
+ *
+ * A writer may be reused for several queries, one at a time.
+ *
+ */
+
+public class ResultWriter implements ResultSink {
+	public enum Format { TSV, CSV, TABLE }
+
+	static final int BUFFER_CHARS = 64 * 1024;
+	// widest column the aligned table pads to; longer values overflow
+	static final int MAX_TABLE_WIDTH = 32;
+
+	private final OutputStream out;
+	private final Format format;
+	private final char[] chars = new char[BUFFER_CHARS];
+	private final CharBuffer charView = CharBuffer.wrap(this.chars);
+	private final ByteBuffer bytes;
+	private final CharsetEncoder encoder;
+	private int length = 0;
+	private int numCol = 0;
+	private int[] widths = new int[0];
+
+	public ResultWriter(OutputStream out, Format format) {
+		this(out, format, Charset.defaultCharset());
+	}
+
+	public ResultWriter(OutputStream out, Format format, Charset charset) {
+		this.out = out;
+		this.format = format;
+		this.encoder = charset.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.bytes = ByteBuffer.allocate((int) (BUFFER_CHARS * this.encoder.maxBytesPerChar()));
+	}
+
+	/**
+	 * Method to pick a format by name, as given to -Ddbproject.output.format.
+	 *
+	 * @param name tsv, csv or table in any case, or null for TSV
+	 * @return the matching format
+	 */
+	public static Format parseFormat(String name) {
+		return name == null ? Format.TSV : Format.valueOf(name.trim().toUpperCase());
+	}
+
+	public void header(ResultSetMetaData rsmd) throws SQLException {
+		this.numCol = rsmd.getColumnCount();
+		if (this.widths.length < this.numCol)
+			this.widths = new int[this.numCol];
+		for (int i = 1; i <= this.numCol; ++i) {
+			String name = rsmd.getColumnName(i);
+			if (this.format == Format.TABLE) {
+				int width = Math.min(Math.max(rsmd.getColumnDisplaySize(i), 1), MAX_TABLE_WIDTH);
+				this.widths[i - 1] = Math.max(width, name.length());
+			}
+			cell(i, name);
+		}
+		append('\n');
+		if (this.format == Format.TABLE) {
+			for (int i = 1; i <= this.numCol; ++i) {
+				if (i > 1)
+					append("-+-");
+				for (int w = 0; w < this.widths[i - 1]; ++w)
+					append('-');
+			}
+			append('\n');
+		}
+	}
+
+	public void row(ResultSet rs) throws SQLException {
+		for (int i = 1; i <= this.numCol; ++i)
+			cell(i, rs.getString(i));
+		append('\n');
+	}
+
+	public void end(int rowCount) {
+		flush();
+	}
+
+	// rows already written out when the buffer filled cannot be taken back
+	public void discard() {
+		this.length = 0;
+	}
+
+	/**
+	 * Method to write out whatever is buffered.
+	 */
+	public void flush() {
+		drain();
+		try {
+			this.out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void cell(int col, String value) {
+		switch (this.format) {
+			case CSV:
+				if (col > 1)
+					append(',');
+				if (value != null)
+					appendQuoted(value);
+				break;
+			case TABLE:
+				if (col > 1)
+					append(" | ");
+				String text = value == null ? "" : trimTrailing(value);
+				append(text);
+				for (int pad = this.widths[col - 1] - text.length(); pad > 0; --pad)
+					append(' ');
+				break;
+			default:
+				if (col > 1)
+					append('\t');
+				if (value != null)
+					append(value);
+				break;
+		}
+	}
+
+	// RFC 4180 quoting, only when the value needs it
+	private void appendQuoted(String value) {
+		boolean quote = false;
+		for (int i = 0; i < value.length() && !quote; ++i) {
+			char c = value.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			append(value);
+			return;
+		}
+		append('"');
+		for (int i = 0; i < value.length(); ++i) {
+			char c = value.charAt(i);
+			if (c == '"')
+				append('"');
+			append(c);
+		}
+		append('"');
+	}
+
+	// CHAR columns come back blank padded to their declared length
+	private static String trimTrailing(String value) {
+		int end = value.length();
+		while (end > 0 && value.charAt(end - 1) == ' ')
+			--end;
+		return end == value.length() ? value : value.substring(0, end);
+	}
+
+	private void append(char c) {
+		if (this.length == this.chars.length)
+			drain();
+		this.chars[this.length++] = c;
+	}
+
+	private void append(String s) {
+		int offset = 0;
+		int remaining = s.length();
+		while (remaining > 0) {
+			if (this.length == this.chars.length)
+				drain();
+			int n = Math.min(remaining, this.chars.length - this.length);
+			s.getChars(offset, offset + n, this.chars, this.length);
+			this.length += n;
+			offset += n;
+			remaining -= n;
+		}
+	}
+
+	// encodes the buffered characters and writes them in one call; the
+	// byte buffer is sized for the worst case so encode never overflows
+	private void drain() {
+		int end = this.length;
+		// keep half of a surrogate pair for the next chunk
+		if (end > 1 && Character.isHighSurrogate(this.chars[end - 1]))
+			--end;
+		if (end == 0)
+			return;
+		this.charView.clear();
+		this.charView.limit(end);
+		this.bytes.clear();
+		this.encoder.reset();
+		this.encoder.encode(this.charView, this.bytes, true);
+		this.encoder.flush(this.bytes);
+		try {
+			this.out.write(this.bytes.array(), 0, this.bytes.position());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (end < this.length)
+			this.chars[0] = this.chars[end];
+		this.length -= end;
+	}
+}//end ResultWriter
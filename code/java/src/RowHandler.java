@@ -0,0 +1,20 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Callback that receives the rows of a streamed query one at a time.  See
+ * DBproject.executeQueryAndStream.
+ *
+ */
+
+public interface RowHandler {
+	/**
+	 * Called once per row, in result order.  The result set is already
+	 * positioned on the row; implementations read its columns but must not
+	 * call next, close it or keep a reference to it after returning.
+	 *
+	 * @param rs the result set positioned on the current row
+	 * @throws java.sql.SQLException to abort the query
+	 */
+	void handleRow(ResultSet rs) throws SQLException;
+}
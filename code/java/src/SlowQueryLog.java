@@ -0,0 +1,228 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Logs every statement DBproject runs that takes longer than a threshold,
+ * with its parameters, duration and row count, and the plan the server
+ * chooses for it.  The plan is captured on a background thread by running
+ * the statement again under EXPLAIN (ANALYZE, BUFFERS) in a transaction
+ * that is rolled back, so the slow caller is not kept waiting any longer.
+ *
+ * Statements that would have effects a rollback cannot undo, such as taking
+ * keys from a sequence, or that would take locks bookings wait on, are
+ * explained without ANALYZE, which shows the estimated plan only.  A
+ * shape's plan is captured at most once per PLAN_INTERVAL_MILLIS and the
+ * other slow runs of it are logged without one, so a statement that is
+ * slow on every call does not double the load.
+ *
+ * Entries go through java.util.logging to rotating files:
+ *
+ *	-Ddbproject.slowQuery.millis=<threshold>    enables the log
+ *	-Ddbproject.slowQuery.file=<pattern>        slow-queries.%g.log by default
+ *	-Ddbproject.slowQuery.limit=<bytes>         per file, 10 MB by default
+ *	-Ddbproject.slowQuery.count=<files>         kept, 5 by default
+ *
+ */
+
+public class SlowQueryLog {
+	static final String DEFAULT_FILE = "slow-queries.%g.log";
+	static final int DEFAULT_LIMIT = 10 * 1024 * 1024;
+	static final int DEFAULT_COUNT = 5;
+	// how often the plan of the same statement is captured again
+	static final long PLAN_INTERVAL_MILLIS = 60 * 1000;
+	// slow statements waiting for their plan; more are logged without one
+	static final int QUEUE_SIZE = 100;
+	// longest parameter value written in full
+	static final int PARAM_WIDTH = 200;
+	// calls that may change something outside the rolled back transaction
+	static final String[] UNSAFE_TO_ANALYZE = { "nextval", "setval", "book_flight", "cancel_reservation", "pg_advisory" };
+
+	private final DBproject esql;
+	private final long thresholdNanos;
+	private final Logger logger;
+	private final FileHandler handler;
+	private final ThreadPoolExecutor explainer;
+	// when the plan of each SQL shape was last captured
+	private final Map<String, Long> lastPlan = new ConcurrentHashMap<String, Long>();
+	private final AtomicLong logged = new AtomicLong();
+
+	public SlowQueryLog(DBproject esql, long thresholdMillis, String pattern, int limit, int count) throws IOException {
+		this.esql = esql;
+		this.thresholdNanos = thresholdMillis * 1000000L;
+		this.handler = new FileHandler(pattern, limit, count, true);
+		this.handler.setEncoding("UTF-8");
+		this.handler.setFormatter(new Formatter() {
+			public String format(LogRecord record) {
+				return record.getMessage();
+			}
+		});
+		// a logger of its own, not the named one every instance would share,
+		// so each entry is written once whatever the number of DBprojects
+		this.logger = Logger.getAnonymousLogger();
+		this.logger.setUseParentHandlers(false);
+		this.logger.setLevel(Level.INFO);
+		this.logger.addHandler(this.handler);
+		this.explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "slow-query-explain");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	}
+
+	/**
+	 * Method to create the log configured by the dbproject.slowQuery
+	 * system properties.
+	 *
+	 * @return the log, or null when no threshold is set
+	 * @throws java.io.IOException when the log file cannot be opened
+	 */
+	static SlowQueryLog fromProperties(DBproject esql) throws IOException {
+		Long millis = Long.getLong("dbproject.slowQuery.millis");
+		if (millis == null || millis < 0)
+			return null;
+		return new SlowQueryLog(esql, millis,
+			System.getProperty("dbproject.slowQuery.file", DEFAULT_FILE),
+			Integer.getInteger("dbproject.slowQuery.limit", DEFAULT_LIMIT),
+			Integer.getInteger("dbproject.slowQuery.count", DEFAULT_COUNT));
+	}
+
+	/**
+	 * Method to log a statement if it was slow.
+	 *
+	 * @param sql the SQL text with ? placeholders
+	 * @param params the values bound to it
+	 * @param nanos how long it took
+	 * @param rows the rows it returned or changed, -1 when it failed
+	 */
+	public void check(final String sql, final Object[] params, final long nanos, final long rows) {
+		if (nanos < this.thresholdNanos)
+			return;
+		final String header = header(sql, params, nanos, rows);
+		long now = System.currentTimeMillis();
+		Long last = this.lastPlan.get(sql);
+		if (last != null && now - last < PLAN_INTERVAL_MILLIS) {
+			write(header + "Plan: captured at most once a minute per statement\n\n");
+			return;
+		}
+		this.lastPlan.put(sql, now);
+		try {
+			this.explainer.execute(new Runnable() {
+				public void run() {
+					String plan;
+					try {
+						plan = explain(sql, params, nanos);
+					} catch (Exception e) {
+						// the entry is written whatever went wrong with the plan
+						plan = "unavailable: " + e.getMessage() + "\n";
+					}
+					write(header + "Plan:\n" + plan + "\n");
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			write(header + "Plan: skipped, too many slow statements waiting\n\n");
+		}
+	}
+
+	/*
+	 * Runs the statement under EXPLAIN in a transaction that is always
+	 * rolled back, with a timeout of a few times its slow run.
+	 */
+	String explain(String sql, Object[] params, long nanos) throws SQLException {
+		String explain = safeToAnalyze(sql) ? "EXPLAIN (ANALYZE, BUFFERS) " : "EXPLAIN ";
+		PooledConnection conn = this.esql.borrowConnection();
+		try {
+			Connection raw = conn.getConnection();
+			raw.setAutoCommit(false);
+			long timeoutMillis = Math.max(1000, 4 * nanos / 1000000);
+			DBproject.prepare(conn, "SELECT set_config('statement_timeout', ?, true);",
+				String.valueOf(timeoutMillis)).executeQuery().close();
+			ResultSet rs = DBproject.prepare(conn, explain + sql, params).executeQuery();
+			StringBuilder plan = new StringBuilder();
+			while (rs.next())
+				plan.append("  ").append(rs.getString(1)).append('\n');
+			rs.close();
+			raw.rollback();
+			return plan.toString();
+		} catch (SQLException e) {
+			conn.checkBroken(e);
+			throw e;
+		} finally {
+			// release rolls back if the rollback above was not reached
+			this.esql.releaseConnection(conn);
+		}
+	}
+
+	static boolean safeToAnalyze(String sql) {
+		String text = sql.trim().toLowerCase();
+		if (!text.startsWith("select"))
+			return false;
+		for (String call : UNSAFE_TO_ANALYZE)
+			if (text.contains(call))
+				return false;
+		return true;
+	}
+
+	static String header(String sql, Object[] params, long nanos, long rows) {
+		StringBuilder entry = new StringBuilder("# ").append(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS))
+			.append(String.format(" %.1f ms ", nanos / 1e6))
+			.append(rows < 0 ? "failed" : rows + " row(s)").append('\n');
+		entry.append("SQL: ").append(sql.replaceAll("\\s+", " ").trim()).append('\n');
+		entry.append("Params: [");
+		for (int i = 0; i < params.length; ++i) {
+			entry.append(i == 0 ? "" : ", ");
+			Object value = params[i];
+			if (value == null || value instanceof Number) {
+				entry.append(value);
+				continue;
+			}
+			String text = value.toString();
+			if (text.length() > PARAM_WIDTH)
+				text = text.substring(0, PARAM_WIDTH) + "...";
+			entry.append('\'').append(text.replace("'", "''")).append('\'');
+		}
+		return entry.append("]\n").toString();
+	}
+
+	private void write(String entry) {
+		this.logger.info(entry);
+		this.logged.incrementAndGet();
+	}
+
+	public long getLogged() {
+		return this.logged.get();
+	}
+
+	/**
+	 * Method to wait for the plans being captured and close the log file.
+	 */
+	public void close() {
+		this.explainer.shutdown();
+		try {
+			this.explainer.awaitTermination(DBproject.POOL_BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.logger.removeHandler(this.handler);
+		this.handler.close();
+	}
+}//end SlowQueryLog
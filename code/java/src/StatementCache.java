@@ -0,0 +1,91 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of PreparedStatements for one connection,
+ * keyed by the SQL text with its ? placeholders.  Reusing the same
+ * PreparedStatement lets the driver keep the server-side prepared statement
+ * so the query is parsed and planned once per connection instead of per call.
+ *
+ * Not thread safe: a connection, and therefore its cache, is only ever used
+ * by the thread that borrowed it from the pool.
+ *
+ */
+
+public class StatementCache {
+	static final int DEFAULT_CAPACITY = 64;
+
+	private final Connection connection;
+	private final LinkedHashMap<String, PreparedStatement> statements;
+	private long hits = 0;
+	private long misses = 0;
+
+	public StatementCache(Connection connection, final int capacity) {
+		this.connection = connection;
+		// access order turns the LinkedHashMap into an LRU list
+		this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() <= capacity)
+					return false;
+				closeQuietly(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Method to obtain the prepared statement for a SQL shape, preparing it
+	 * on first use.  The statement stays owned by the cache and must not be
+	 * closed by the caller.
+	 *
+	 * @param sql the SQL text with ? placeholders
+	 * @return a prepared statement with its parameters cleared
+	 * @throws java.sql.SQLException when the statement cannot be prepared
+	 */
+	public PreparedStatement prepare(String sql) throws SQLException {
+		PreparedStatement stmt = this.statements.get(sql);
+		if (stmt != null && !stmt.isClosed()) {
+			this.hits++;
+			stmt.clearParameters();
+			return stmt;
+		}
+		this.misses++;
+		stmt = this.connection.prepareStatement(sql);
+		this.statements.put(sql, stmt);
+		return stmt;
+	}
+
+	public long getHits() {
+		return this.hits;
+	}
+
+	public long getMisses() {
+		return this.misses;
+	}
+
+	public int size() {
+		return this.statements.size();
+	}
+
+	/**
+	 * Method to close every cached statement.
+	 */
+	public void clear() {
+		for (Iterator<PreparedStatement> it = this.statements.values().iterator(); it.hasNext();) {
+			closeQuietly(it.next());
+			it.remove();
+		}
+	}
+
+	private static void closeQuietly(PreparedStatement stmt) {
+		try {
+			stmt.close();
+		} catch (SQLException e) {
+			// ignored.
+		}
+	}
+}//end StatementCache
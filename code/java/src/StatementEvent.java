@@ -0,0 +1,40 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for one statement run by a DBproject execute
+ * method, from asking the pool for a connection until the statement has
+ * finished; handing the connection back, which may roll back an open
+ * transaction, comes after the event ends.  Its fields are only filled in
+ * when a recording wants the event, so with recording off an execute
+ * method pays for a field check.
+ *
+ *	java -XX:StartFlightRecording=filename=dbproject.jfr -cp lib/*:bin/ DBproject ...
+ *	jfr print --events dbproject.Statement dbproject.jfr
+ *
+ */
+
+@Name("dbproject.Statement")
+@Label("SQL Statement")
+@Category("DBproject")
+@Description("A statement run through DBproject, including the wait for a pooled connection")
+@StackTrace(false)
+public class StatementEvent extends Event {
+	@Label("SQL Shape")
+	@Description("The SQL text with ? for each parameter")
+	String sql;
+
+	@Label("Rows")
+	@Description("Rows returned or changed, -1 when the statement failed")
+	long rows;
+
+	@Label("Connection Wait")
+	@Description("Time spent waiting for a pooled connection, 0 on a connection the caller had borrowed")
+	@Timespan(Timespan.NANOSECONDS)
+	long connectionWait;
+}//end StatementEvent
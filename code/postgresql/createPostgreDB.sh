@@ -9,4 +9,19 @@ cp ../data/*.csv /tmp/$USER/myDB/data/.
 
 echo "Initializing tables .. "
 sleep 1
-psql -h localhost -p $PGPORT $USER"_DB" < ../sql/create.sql
\ No newline at end of file
+psql -h localhost -p $PGPORT $USER"_DB" < ../sql/create.sql
+
+echo "Creating key sequences .. "
+psql -h localhost -p $PGPORT $USER"_DB" < ../sql/sequences.sql
+
+echo "Creating booking function .. "
+psql -h localhost -p $PGPORT $USER"_DB" < ../sql/booking.sql
+
+echo "Creating indexes .. "
+psql -h localhost -p $PGPORT $USER"_DB" < ../sql/indexes.sql
+
+echo "Creating flight status counts .. "
+psql -h localhost -p $PGPORT $USER"_DB" < ../sql/status_counts.sql
+
+echo "Creating repair rollups .. "
+psql -h localhost -p $PGPORT $USER"_DB" < ../sql/repair_rollups.sql
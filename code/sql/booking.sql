@@ -0,0 +1,102 @@
+-----------------------
+---BOOKING PROCEDURE---
+-----------------------
+-- Used by BookingEngine.java. Books a seat in one statement, so one round
+-- trip and one transaction: either every row is written or none is.
+--
+-- If the customer already holds a reservation on the flight its status is
+-- changed, otherwise a reservation numbered p_rnum is added. A customer that
+-- does not exist yet is added first when p_fname is given. Returns the final
+-- reservation.
+--
+-- Seat inventory: Flight.num_sold counts the reservations holding a seat,
+-- reserved (R) or confirmed (C); a waitlisted (W) one holds none. Every
+-- booking, status change and cancellation moves num_sold in the same
+-- transaction, and a seat is only taken by a conditional UPDATE that checks
+-- the capacity of the flight's plane, so concurrent bookings cannot oversell.
+
+DROP FUNCTION IF EXISTS book_flight(INTEGER, INTEGER, INTEGER, CHAR, CHAR, CHAR, CHAR, DATE, CHAR, CHAR, CHAR);--OK
+DROP FUNCTION IF EXISTS cancel_reservation(INTEGER);--OK
+DROP FUNCTION IF EXISTS adjust_seats(INTEGER, CHAR, CHAR);--OK
+
+-- Moves num_sold of a flight for a reservation going from p_old to p_new
+-- status, NULL meaning no reservation. Raises SQL state BK001 when a seat is
+-- needed and the flight is full. A flight without a plane has no capacity
+-- to check.
+CREATE FUNCTION adjust_seats(p_fid INTEGER, p_old CHAR(1), p_new CHAR(1))
+RETURNS VOID AS $$
+DECLARE
+	v_had BOOLEAN := COALESCE(p_old IN ('C', 'R'), FALSE);
+	v_needs BOOLEAN := COALESCE(p_new IN ('C', 'R'), FALSE);
+BEGIN
+	IF v_needs AND NOT v_had THEN
+		-- the row lock taken by the UPDATE makes the check and the increment
+		-- one step; a waiting booking re-checks num_sold once it gets the row
+		UPDATE Flight F SET num_sold = F.num_sold + 1
+			WHERE F.fnum = p_fid
+			AND F.num_sold < COALESCE((SELECT MIN(P.seats) FROM FlightInfo FI, Plane P
+				WHERE FI.flight_id = F.fnum AND P.id = FI.plane_id), F.num_sold + 1);
+		IF NOT FOUND THEN
+			RAISE EXCEPTION 'Flight % is sold out', p_fid USING ERRCODE = 'BK001';
+		END IF;
+	ELSIF v_had AND NOT v_needs THEN
+		UPDATE Flight SET num_sold = num_sold - 1 WHERE fnum = p_fid AND num_sold > 0;
+	END IF;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION book_flight(p_rnum INTEGER, p_cid INTEGER, p_fid INTEGER, p_status CHAR(1),
+	p_fname CHAR(24) DEFAULT NULL, p_lname CHAR(24) DEFAULT NULL, p_gtype CHAR(1) DEFAULT NULL,
+	p_dob DATE DEFAULT NULL, p_address CHAR(256) DEFAULT NULL, p_phone CHAR(10) DEFAULT NULL,
+	p_zipcode CHAR(10) DEFAULT NULL)
+RETURNS SETOF Reservation AS $$
+DECLARE
+	v_rnum INTEGER;
+	v_old CHAR(1);
+BEGIN
+	-- two bookings of the same customer on the same flight wait for each
+	-- other, so neither can miss the reservation the other adds
+	PERFORM pg_advisory_xact_lock(p_cid, p_fid);
+
+	PERFORM 1 FROM Flight WHERE fnum = p_fid;
+	IF NOT FOUND THEN
+		RAISE EXCEPTION 'Flight % does not exist', p_fid USING ERRCODE = 'foreign_key_violation';
+	END IF;
+
+	SELECT rnum, status INTO v_rnum, v_old FROM Reservation
+		WHERE cid = p_cid AND fid = p_fid ORDER BY rnum LIMIT 1 FOR UPDATE;
+	IF FOUND THEN
+		PERFORM adjust_seats(p_fid, v_old, p_status);
+		RETURN QUERY UPDATE Reservation SET status = p_status WHERE rnum = v_rnum RETURNING *;
+		RETURN;
+	END IF;
+
+	PERFORM 1 FROM Customer WHERE id = p_cid;
+	IF NOT FOUND THEN
+		IF p_fname IS NULL THEN
+			RAISE EXCEPTION 'Customer % does not exist', p_cid USING ERRCODE = 'foreign_key_violation';
+		END IF;
+		INSERT INTO Customer (id, fname, lname, gtype, dob, address, phone, zipcode)
+			VALUES (p_cid, p_fname, p_lname, p_gtype, p_dob, p_address, p_phone, p_zipcode);
+	END IF;
+
+	PERFORM adjust_seats(p_fid, NULL, p_status);
+	RETURN QUERY INSERT INTO Reservation (rnum, cid, fid, status)
+		VALUES (p_rnum, p_cid, p_fid, p_status) RETURNING *;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Deletes a reservation and gives its seat back. Returns the deleted
+-- reservation, or no row when there is none numbered p_rnum.
+CREATE FUNCTION cancel_reservation(p_rnum INTEGER)
+RETURNS SETOF Reservation AS $$
+DECLARE
+	v_row Reservation%ROWTYPE;
+BEGIN
+	DELETE FROM Reservation WHERE rnum = p_rnum RETURNING * INTO v_row;
+	IF FOUND THEN
+		PERFORM adjust_seats(v_row.fid, v_row.status, NULL);
+		RETURN NEXT v_row;
+	END IF;
+END;
+$$ LANGUAGE plpgsql;
@@ -0,0 +1,35 @@
+-------------
+---INDEXES---
+-------------
+-- Secondary indexes for the menu queries. Primary keys are indexed by
+-- create.sql already. Safe to run again; PlanCheck.java verifies that the
+-- menu queries use them.
+
+DROP INDEX IF EXISTS reservation_fid_idx;--OK
+DROP INDEX IF EXISTS reservation_fid_status_idx;--OK
+DROP INDEX IF EXISTS reservation_cid_fid_idx;--OK
+DROP INDEX IF EXISTS flightinfo_flight_id_idx;--OK
+DROP INDEX IF EXISTS flightinfo_plane_id_idx;--OK
+DROP INDEX IF EXISTS repairs_plane_id_idx;--OK
+DROP INDEX IF EXISTS repairs_repair_date_idx;--OK
+DROP INDEX IF EXISTS flight_departure_date_idx;--OK
+
+-- reservations of a flight, by status: option 9, the status counts
+CREATE INDEX reservation_fid_status_idx ON Reservation (fid, status);
+-- reservations of a customer, and of a customer on a flight: bookings
+CREATE INDEX reservation_cid_fid_idx ON Reservation (cid, fid);
+-- the planes and pilots of a flight: options 6 and 11, seat checks
+CREATE INDEX flightinfo_flight_id_idx ON FlightInfo (flight_id);
+-- the flights of a plane
+CREATE INDEX flightinfo_plane_id_idx ON FlightInfo (plane_id);
+-- the repairs of a plane, and the rollup recompute per plane
+CREATE INDEX repairs_plane_id_idx ON Repairs (plane_id);
+-- repairs in a date range
+CREATE INDEX repairs_repair_date_idx ON Repairs (repair_date);
+-- flights departing on a date or in a date range: options 6 and 11
+CREATE INDEX flight_departure_date_idx ON Flight (actual_departure_date);
+
+ANALYZE Reservation;
+ANALYZE FlightInfo;
+ANALYZE Repairs;
+ANALYZE Flight;
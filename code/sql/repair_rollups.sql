@@ -0,0 +1,60 @@
+--------------------
+---REPAIR ROLLUPS---
+--------------------
+-- Number of repairs per plane and per year, read by reports 7 and 8 instead
+-- of grouping the whole Repairs table. Kept current by a row trigger on
+-- Repairs, so every writer updates them in the same transaction; a report
+-- reads one row per plane or per year however long the repair history
+-- grows. Every repair of a year updates the same RepairsPerYear row, so
+-- concurrent repair inserts queue on that row lock until each commits.
+-- DataLoader disables the trigger while it copies the CSV files and refills
+-- both tables with the queries below. RepairRollups.java compares them with
+-- a full recompute and can rebuild them. Run after the tables are loaded.
+
+DROP TRIGGER IF EXISTS repairs_rollup ON Repairs;--OK
+DROP FUNCTION IF EXISTS rollup_repairs();--OK
+DROP TABLE IF EXISTS RepairsPerPlane;--OK
+DROP TABLE IF EXISTS RepairsPerYear;--OK
+
+CREATE TABLE RepairsPerPlane
+(
+	plane_id INTEGER NOT NULL,
+	total INTEGER NOT NULL,
+	PRIMARY KEY (plane_id),
+	FOREIGN KEY (plane_id) REFERENCES Plane(id) ON DELETE CASCADE
+);
+CREATE TABLE RepairsPerYear
+(
+	repair_year INTEGER NOT NULL,
+	total INTEGER NOT NULL,
+	PRIMARY KEY (repair_year)
+);
+
+CREATE FUNCTION rollup_repairs()
+RETURNS TRIGGER AS $$
+BEGIN
+	IF TG_OP IN ('UPDATE', 'DELETE') THEN
+		UPDATE RepairsPerPlane SET total = total - 1 WHERE plane_id = OLD.plane_id;
+		UPDATE RepairsPerYear SET total = total - 1
+			WHERE repair_year = CAST(EXTRACT(YEAR FROM OLD.repair_date) AS INTEGER);
+	END IF;
+	IF TG_OP IN ('INSERT', 'UPDATE') THEN
+		INSERT INTO RepairsPerPlane AS S (plane_id, total) VALUES (NEW.plane_id, 1)
+			ON CONFLICT (plane_id) DO UPDATE SET total = S.total + 1;
+		INSERT INTO RepairsPerYear AS S (repair_year, total)
+			VALUES (CAST(EXTRACT(YEAR FROM NEW.repair_date) AS INTEGER), 1)
+			ON CONFLICT (repair_year) DO UPDATE SET total = S.total + 1;
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- the totals of the rows already loaded
+INSERT INTO RepairsPerPlane (plane_id, total)
+	SELECT plane_id, COUNT(*) FROM Repairs GROUP BY plane_id;
+INSERT INTO RepairsPerYear (repair_year, total)
+	SELECT CAST(EXTRACT(YEAR FROM repair_date) AS INTEGER), COUNT(*) FROM Repairs GROUP BY 1;
+
+CREATE TRIGGER repairs_rollup
+	AFTER INSERT OR UPDATE OF plane_id, repair_date OR DELETE ON Repairs
+	FOR EACH ROW EXECUTE PROCEDURE rollup_repairs();
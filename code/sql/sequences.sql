@@ -0,0 +1,31 @@
+-------------------------
+---KEY BLOCK SEQUENCES---
+-------------------------
+-- Used by KeyAllocator.java. Every nextval reserves a block of 1000 keys
+-- (INCREMENT BY must match KeyAllocator.BLOCK_SIZE); the program hands the
+-- keys of a block out from memory. Run after the tables are loaded.
+
+DROP SEQUENCE IF EXISTS plane_id_seq;--OK
+DROP SEQUENCE IF EXISTS pilot_id_seq;--OK
+DROP SEQUENCE IF EXISTS technician_id_seq;--OK
+DROP SEQUENCE IF EXISTS flight_fnum_seq;--OK
+DROP SEQUENCE IF EXISTS flightinfo_fiid_seq;--OK
+DROP SEQUENCE IF EXISTS reservation_rnum_seq;--OK
+DROP SEQUENCE IF EXISTS repairs_rid_seq;--OK
+
+CREATE SEQUENCE plane_id_seq MINVALUE 0 INCREMENT BY 1000;
+CREATE SEQUENCE pilot_id_seq MINVALUE 0 INCREMENT BY 1000;
+CREATE SEQUENCE technician_id_seq MINVALUE 0 INCREMENT BY 1000;
+CREATE SEQUENCE flight_fnum_seq MINVALUE 0 INCREMENT BY 1000;
+CREATE SEQUENCE flightinfo_fiid_seq MINVALUE 0 INCREMENT BY 1000;
+CREATE SEQUENCE reservation_rnum_seq MINVALUE 0 INCREMENT BY 1000;
+CREATE SEQUENCE repairs_rid_seq MINVALUE 0 INCREMENT BY 1000;
+
+-- start each sequence just past the keys already in its table
+SELECT setval('plane_id_seq', (SELECT COALESCE(MAX(id), -1) + 1 FROM Plane), false);
+SELECT setval('pilot_id_seq', (SELECT COALESCE(MAX(id), -1) + 1 FROM Pilot), false);
+SELECT setval('technician_id_seq', (SELECT COALESCE(MAX(id), -1) + 1 FROM Technician), false);
+SELECT setval('flight_fnum_seq', (SELECT COALESCE(MAX(fnum), -1) + 1 FROM Flight), false);
+SELECT setval('flightinfo_fiid_seq', (SELECT COALESCE(MAX(fiid), -1) + 1 FROM FlightInfo), false);
+SELECT setval('reservation_rnum_seq', (SELECT COALESCE(MAX(rnum), -1) + 1 FROM Reservation), false);
+SELECT setval('repairs_rid_seq', (SELECT COALESCE(MAX(rid), -1) + 1 FROM Repairs), false);
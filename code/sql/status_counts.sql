@@ -0,0 +1,58 @@
+--------------------------
+---FLIGHT STATUS COUNTS---
+--------------------------
+-- Number of reservations of each status on every flight, read by option 9
+-- and the all flights dashboard instead of counting Reservation rows. Kept
+-- current by a row trigger on Reservation, so every writer updates it in the
+-- same transaction. DataLoader disables the trigger while it copies the CSV
+-- files and refills the table with the query below. A flight without a row
+-- has no reservations. Run after the tables are loaded.
+
+DROP TRIGGER IF EXISTS reservation_status_count ON Reservation;--OK
+DROP FUNCTION IF EXISTS count_reservation_status();--OK
+DROP TABLE IF EXISTS FlightStatusCount;--OK
+
+CREATE TABLE FlightStatusCount
+(
+	fid INTEGER NOT NULL,
+	waitlisted INTEGER NOT NULL DEFAULT 0,
+	confirmed INTEGER NOT NULL DEFAULT 0,
+	reserved INTEGER NOT NULL DEFAULT 0,
+	PRIMARY KEY (fid),
+	FOREIGN KEY (fid) REFERENCES Flight(fnum) ON DELETE CASCADE
+);
+
+CREATE FUNCTION count_reservation_status()
+RETURNS TRIGGER AS $$
+BEGIN
+	IF TG_OP IN ('UPDATE', 'DELETE') AND OLD.status IS NOT NULL THEN
+		UPDATE FlightStatusCount SET
+			waitlisted = waitlisted - CASE WHEN OLD.status = 'W' THEN 1 ELSE 0 END,
+			confirmed = confirmed - CASE WHEN OLD.status = 'C' THEN 1 ELSE 0 END,
+			reserved = reserved - CASE WHEN OLD.status = 'R' THEN 1 ELSE 0 END
+			WHERE fid = OLD.fid;
+	END IF;
+	IF TG_OP IN ('INSERT', 'UPDATE') AND NEW.status IS NOT NULL THEN
+		INSERT INTO FlightStatusCount AS S (fid, waitlisted, confirmed, reserved)
+			VALUES (NEW.fid,
+				CASE WHEN NEW.status = 'W' THEN 1 ELSE 0 END,
+				CASE WHEN NEW.status = 'C' THEN 1 ELSE 0 END,
+				CASE WHEN NEW.status = 'R' THEN 1 ELSE 0 END)
+			ON CONFLICT (fid) DO UPDATE SET
+				waitlisted = S.waitlisted + EXCLUDED.waitlisted,
+				confirmed = S.confirmed + EXCLUDED.confirmed,
+				reserved = S.reserved + EXCLUDED.reserved;
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- the counts of the rows already loaded
+INSERT INTO FlightStatusCount (fid, waitlisted, confirmed, reserved)
+	SELECT fid, COUNT(*) FILTER (WHERE status = 'W'), COUNT(*) FILTER (WHERE status = 'C'),
+		COUNT(*) FILTER (WHERE status = 'R')
+	FROM Reservation GROUP BY fid;
+
+CREATE TRIGGER reservation_status_count
+	AFTER INSERT OR UPDATE OF status, fid OR DELETE ON Reservation
+	FOR EACH ROW EXECUTE PROCEDURE count_reservation_status();